@@ -0,0 +1,19 @@
+package com.example.weathermatebackend.config;
+
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+@Configuration
+@EnableScheduling
+public class AsyncConfig {
+
+    // background cache refreshes are I/O bound, one virtual thread per refresh is enough
+    @Bean(destroyMethod = "shutdown")
+    public ExecutorService weatherRefreshExecutor() {
+        return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("weather-refresh-", 0).factory());
+    }
+}
@@ -0,0 +1,84 @@
+package com.example.weathermatebackend.config;
+
+import com.example.weathermatebackend.service.SearchHistoryPartitions;
+import com.example.weathermatebackend.service.UserStatsService;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.SmartInitializingSingleton;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+/**
+ * Schema tweaks for search_history that Hibernate's ddl-auto cannot express.
+ * - Converts the table to monthly range partitions (see {@link SearchHistoryPartitions}).
+ * - Moves search_history_seq past the IDs already in the table. Rows written before the
+ *   switch from IDENTITY to a pooled sequence keep their IDs, and the sequence Hibernate
+ *   creates starts at 1, so without this the first batches would collide.
+ * - Creates the covering index behind keyset-paginated history: (user_id, searched_at desc, id)
+ *   is the page order, and INCLUDE carries the remaining projected columns so a page (and
+ *   the dedup lookup of a user's latest row for a city) can be answered by an index-only
+ *   scan. JPA's @Index has no INCLUDE, hence native DDL.
+ * - Seeds user_city_stats from history the first time it is empty (see {@link UserStatsService}).
+ * Runs once all beans exist, i.e. after Hibernate's schema update and before the
+ * history writer starts.
+ */
+@Component
+public class HistorySchemaInitializer implements SmartInitializingSingleton {
+
+    private static final Logger log = LoggerFactory.getLogger(HistorySchemaInitializer.class);
+
+    // the pooled optimizer hands out the block below each sequence value, so stay one block clear
+    private static final String ALIGN_SEQUENCE = """
+            select setval('search_history_seq', greatest(
+                    (select coalesce(max(id), 0) from search_history) + 50,
+                    (select last_value from search_history_seq)))
+            """;
+
+    // created on the partitioned parent, so every monthly partition gets its own copy
+    private static final String CREATE_HISTORY_PAGE_INDEX = """
+            create index if not exists idx_search_history_user_page
+                on search_history (user_id, searched_at desc, id)
+                include (city, city_id, temperature, hit_count)
+            """;
+
+    // superseded by idx_search_history_user_page once hit_count joined the included columns
+    private static final String DROP_OLD_HISTORY_PAGE_INDEX = "drop index if exists idx_search_history_user_time";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final SearchHistoryPartitions partitions;
+    private final UserStatsService userStatsService;
+
+    public HistorySchemaInitializer(JdbcTemplate jdbcTemplate, SearchHistoryPartitions partitions,
+                                    UserStatsService userStatsService) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.partitions = partitions;
+        this.userStatsService = userStatsService;
+    }
+
+    @Override
+    public void afterSingletonsInstantiated() {
+        try {
+            partitions.prepare();
+        } catch (DataAccessException e) {
+            log.warn("Could not set up search_history partitions", e);
+        }
+        try {
+            Long value = jdbcTemplate.queryForObject(ALIGN_SEQUENCE, Long.class);
+            log.info("search_history_seq aligned at {}", value);
+        } catch (DataAccessException e) {
+            log.warn("Could not align search_history_seq with existing history rows", e);
+        }
+        try {
+            jdbcTemplate.execute(CREATE_HISTORY_PAGE_INDEX);
+            jdbcTemplate.execute(DROP_OLD_HISTORY_PAGE_INDEX);
+        } catch (DataAccessException e) {
+            log.warn("Could not create the history page index", e);
+        }
+        try {
+            userStatsService.backfillIfEmpty();
+        } catch (DataAccessException e) {
+            log.warn("Could not seed user_city_stats from search history", e);
+        }
+    }
+}
@@ -1,15 +1,15 @@
 package com.example.weathermatebackend.config;
 
+import com.example.weathermatebackend.model.UserPrinciple;
 import com.example.weathermatebackend.service.JwtService;
-import com.example.weathermatebackend.service.MyUserDetailsService;
+import com.example.weathermatebackend.service.PrincipalCache;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.FilterChain;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.context.ApplicationContext;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.context.SecurityContextHolder;
-import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.web.authentication.WebAuthenticationDetailsSource;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
@@ -21,10 +21,10 @@ public class JwtFilter extends OncePerRequestFilter {
 
     private final JwtService jwtService;
 
-    private final ApplicationContext context;
+    private final PrincipalCache principalCache;
 
-    public JwtFilter(ApplicationContext context, JwtService jwtService) {
-        this.context = context;
+    public JwtFilter(PrincipalCache principalCache, JwtService jwtService) {
+        this.principalCache = principalCache;
         this.jwtService = jwtService;
     }
 
@@ -33,24 +33,22 @@ public class JwtFilter extends OncePerRequestFilter {
 
         // Bearer (jwt_token)
         String authHeader = request.getHeader("Authorization");
-        String token;
-        String username;
-
-        if(authHeader != null && authHeader.startsWith("Bearer ")) {
-            token = authHeader.substring(7);
-            username = jwtService.extractUsername(token);
-
-            if(username != null && SecurityContextHolder.getContext().getAuthentication() == null) {
-
-                UserDetails userDetails = context.getBean(MyUserDetailsService.class).loadUserByUsername(username);
-
-                if(jwtService.validateToken(token, userDetails)) {
-                    UsernamePasswordAuthenticationToken authToken =
-                            new UsernamePasswordAuthenticationToken(userDetails, null, userDetails.getAuthorities());
-                    authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
-                    SecurityContextHolder.getContext().setAuthentication(authToken);
-                }
 
+        if(authHeader != null && authHeader.startsWith("Bearer ")
+                && SecurityContextHolder.getContext().getAuthentication() == null) {
+            // verified once; signature and expiry are both checked here
+            Claims claims = jwtService.verify(authHeader.substring(7));
+
+            // the user comes from the principal cache, keyed by the token's user ID
+            // refresh tokens live for days and are revoked only at /refresh, so they never authenticate here
+            UserPrinciple principal = claims == null || claims.getSubject() == null || !JwtService.isAccessToken(claims)
+                    ? null : principalCache.resolve(claims);
+
+            if(principal != null) {
+                UsernamePasswordAuthenticationToken authToken =
+                        new UsernamePasswordAuthenticationToken(principal, null, principal.getAuthorities());
+                authToken.setDetails(new WebAuthenticationDetailsSource().buildDetails(request));
+                SecurityContextHolder.getContext().setAuthentication(authToken);
             }
         }
 
@@ -0,0 +1,151 @@
+package com.example.weathermatebackend.config;
+
+import com.example.weathermatebackend.exception.ApiErrorResponse;
+import com.example.weathermatebackend.service.LoginThrottle;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ReadListener;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletInputStream;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns away POST /login attempts over the {@link LoginThrottle} limits with 429 and
+ * Retry-After, before the body reaches the controller and BCrypt. The body is read here to
+ * find the username and replayed to the rest of the chain. The client IP is the remote
+ * address; behind a proxy, server.forward-headers-strategy makes that the real client.
+ */
+@Component
+public class LoginThrottleFilter extends OncePerRequestFilter {
+
+    // credentials are a few dozen bytes; anything bigger is not a login
+    private static final int MAX_BODY_BYTES = 8 * 1024;
+
+    private final LoginThrottle loginThrottle;
+    private final ObjectMapper objectMapper;
+
+    public LoginThrottleFilter(LoginThrottle loginThrottle, ObjectMapper objectMapper) {
+        this.loginThrottle = loginThrottle;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !("POST".equals(request.getMethod()) && "/login".equals(request.getServletPath()));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+
+        byte[] body = request.getInputStream().readNBytes(MAX_BODY_BYTES + 1);
+        if (body.length > MAX_BODY_BYTES) {
+            response.sendError(HttpStatus.PAYLOAD_TOO_LARGE.value());
+            return;
+        }
+
+        String username = usernameOf(body);
+        long retryAfterMillis = loginThrottle.tryAcquire(request.getRemoteAddr(), username);
+        if (retryAfterMillis > 0) {
+            reject(request, response, retryAfterMillis);
+            return;
+        }
+
+        filterChain.doFilter(new CachedBodyRequest(request, body), response);
+
+        if (username != null && response.getStatus() == HttpServletResponse.SC_OK) {
+            loginThrottle.onSuccess(username);
+        }
+    }
+
+    // null when the body is not the JSON the controller expects; it answers that itself
+    private String usernameOf(byte[] body) {
+        try {
+            return objectMapper.readTree(body).path("username").textValue();
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    private void reject(HttpServletRequest request, HttpServletResponse response, long retryAfterMillis) throws IOException {
+        long retryAfterSeconds = Math.max(1, (retryAfterMillis + 999) / 1000);
+        ApiErrorResponse errorResponse = new ApiErrorResponse(
+                HttpStatus.TOO_MANY_REQUESTS.value(),
+                "Too Many Requests",
+                "Too many login attempts, retry in " + retryAfterSeconds + " seconds",
+                request.getRequestURI()
+        );
+        response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+        response.setHeader(HttpHeaders.RETRY_AFTER, Long.toString(retryAfterSeconds));
+        response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+        objectMapper.writeValue(response.getOutputStream(), errorResponse);
+    }
+
+    private static final class CachedBodyRequest extends HttpServletRequestWrapper {
+
+        private final byte[] body;
+
+        CachedBodyRequest(HttpServletRequest request, byte[] body) {
+            super(request);
+            this.body = body;
+        }
+
+        @Override
+        public ServletInputStream getInputStream() {
+            ByteArrayInputStream in = new ByteArrayInputStream(body);
+            return new ServletInputStream() {
+                @Override
+                public int read() {
+                    return in.read();
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) {
+                    return in.read(b, off, len);
+                }
+
+                @Override
+                public boolean isFinished() {
+                    return in.available() == 0;
+                }
+
+                @Override
+                public boolean isReady() {
+                    return true;
+                }
+
+                @Override
+                public void setReadListener(ReadListener listener) {
+                    throw new UnsupportedOperationException("Login bodies are read synchronously");
+                }
+            };
+        }
+
+        @Override
+        public BufferedReader getReader() {
+            return new BufferedReader(new InputStreamReader(getInputStream(), StandardCharsets.UTF_8));
+        }
+
+        @Override
+        public int getContentLength() {
+            return body.length;
+        }
+
+        @Override
+        public long getContentLengthLong() {
+            return body.length;
+        }
+    }
+}
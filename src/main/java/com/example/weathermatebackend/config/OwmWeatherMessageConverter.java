@@ -0,0 +1,109 @@
+package com.example.weathermatebackend.config;
+
+import com.example.weathermatebackend.dto.WeatherDto;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.core.JsonToken;
+import org.springframework.http.HttpInputMessage;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.AbstractHttpMessageConverter;
+import org.springframework.http.converter.HttpMessageNotReadableException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Read-only converter that streams an OpenWeatherMap /weather response into {@link WeatherDto}.
+ * Only main.temp, main.feels_like, main.humidity and wind.speed are read; every other
+ * field is skipped token by token, so no tree, map or string values are built for the
+ * rest of the payload. Registered on the OpenWeatherMap RestClient only.
+ */
+public class OwmWeatherMessageConverter extends AbstractHttpMessageConverter<WeatherDto> {
+
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    public OwmWeatherMessageConverter() {
+        super(MediaType.APPLICATION_JSON);
+    }
+
+    @Override
+    protected boolean supports(Class<?> clazz) {
+        return WeatherDto.class == clazz;
+    }
+
+    @Override
+    public boolean canWrite(Class<?> clazz, MediaType mediaType) {
+        return false;
+    }
+
+    @Override
+    protected WeatherDto readInternal(Class<? extends WeatherDto> clazz, HttpInputMessage inputMessage) throws IOException {
+        try {
+            return decode(inputMessage.getBody());
+        } catch (JsonProcessingException e) {
+            throw new HttpMessageNotReadableException("Invalid weather response: " + e.getOriginalMessage(), e, inputMessage);
+        }
+    }
+
+    @Override
+    protected void writeInternal(WeatherDto weatherDto, HttpOutputMessage outputMessage) {
+        throw new UnsupportedOperationException("OwmWeatherMessageConverter is read-only");
+    }
+
+    public static WeatherDto decode(InputStream body) throws IOException {
+        try (JsonParser parser = JSON_FACTORY.createParser(body)) {
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Expected a JSON object");
+            }
+
+            WeatherDto weather = new WeatherDto();
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                // field names come from Jackson's symbol table, no per-call allocation
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+
+                if (value == JsonToken.START_OBJECT && "main".equals(field)) {
+                    weather.setMain(readMain(parser));
+                } else if (value == JsonToken.START_OBJECT && "wind".equals(field)) {
+                    weather.setWind(readWind(parser));
+                } else {
+                    // no-op for scalars, skips nested objects and arrays without decoding them
+                    parser.skipChildren();
+                }
+            }
+            return weather;
+        }
+    }
+
+    private static WeatherDto.Main readMain(JsonParser parser) throws IOException {
+        WeatherDto.Main main = new WeatherDto.Main();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            switch (field) {
+                case "temp" -> main.setTemp(parser.getDoubleValue());
+                case "feels_like" -> main.setFeels_like(parser.getDoubleValue());
+                case "humidity" -> main.setHumidity(parser.getIntValue());
+                default -> parser.skipChildren();
+            }
+        }
+        return main;
+    }
+
+    private static WeatherDto.Wind readWind(JsonParser parser) throws IOException {
+        WeatherDto.Wind wind = new WeatherDto.Wind();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            parser.nextToken();
+            if ("speed".equals(field)) {
+                wind.setSpeed(parser.getDoubleValue());
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return wind;
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.weathermatebackend.config;
+
+import com.example.weathermatebackend.service.JwtService;
+import com.example.weathermatebackend.service.RevokedTokenStore;
+import io.jsonwebtoken.Claims;
+import jakarta.servlet.http.Cookie;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.web.authentication.logout.LogoutHandler;
+import org.springframework.stereotype.Component;
+
+// deleting the cookie is not enough: a copy of the token would keep working until it expires
+@Component
+public class RefreshTokenLogoutHandler implements LogoutHandler {
+
+    private final JwtService jwtService;
+    private final RevokedTokenStore revokedTokens;
+    private final String refreshTokenCookieName;
+
+    public RefreshTokenLogoutHandler(JwtService jwtService, RevokedTokenStore revokedTokens,
+                                     @Value("${jwt.refreshTokenCookieName}") String refreshTokenCookieName) {
+        this.jwtService = jwtService;
+        this.revokedTokens = revokedTokens;
+        this.refreshTokenCookieName = refreshTokenCookieName;
+    }
+
+    @Override
+    public void logout(HttpServletRequest request, HttpServletResponse response, Authentication authentication) {
+        if (request.getCookies() == null) {
+            return;
+        }
+        for (Cookie cookie : request.getCookies()) {
+            if (refreshTokenCookieName.equals(cookie.getName())) {
+                Claims claims = jwtService.verify(cookie.getValue());
+                if (claims != null && claims.getId() != null) {
+                    revokedTokens.revoke(claims.getId(), claims.getExpiration().getTime());
+                }
+            }
+        }
+    }
+}
@@ -1,19 +1,86 @@
 package com.example.weathermatebackend.config;
 
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.hc5.PoolingHttpClientConnectionManagerMetricsBinder;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManager;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestClient;
 
+import java.util.concurrent.TimeUnit;
+
 @Configuration
 public class RestClientConfig {
 
     @Value("${openweathermap.api.url}")
     private String apiUrl;
 
+    @Value("${weather.http.max-connections}")
+    private int maxConnections;
+
+    @Value("${weather.http.max-connections-per-route}")
+    private int maxConnectionsPerRoute;
+
+    @Value("${weather.http.connect-timeout.millis}")
+    private long connectTimeoutMillis;
+
+    @Value("${weather.http.read-timeout.millis}")
+    private long readTimeoutMillis;
+
+    @Value("${weather.http.pool-wait-timeout.millis}")
+    private long poolWaitTimeoutMillis;
+
+    @Value("${weather.http.keep-alive.seconds}")
+    private long keepAliveSeconds;
+
+    /**
+     * Pooled Apache HttpClient transport for OpenWeatherMap.
+     * Every stage of a call is time-bounded (pool wait, connect, read) so a slow
+     * upstream can no longer hold a Tomcat worker indefinitely.
+     * Spring closes the factory, and with it the pool, on shutdown.
+     */
+    @Bean
+    public HttpComponentsClientHttpRequestFactory weatherRequestFactory(MeterRegistry meterRegistry) {
+        PoolingHttpClientConnectionManager pool = PoolingHttpClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(maxConnections)
+                .setMaxConnPerRoute(maxConnectionsPerRoute)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(Timeout.ofMilliseconds(connectTimeoutMillis))
+                        .setSocketTimeout(Timeout.ofMilliseconds(readTimeoutMillis))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                .build();
+        new PoolingHttpClientConnectionManagerMetricsBinder(pool, "openweathermap").bindTo(meterRegistry);
+
+        CloseableHttpClient httpClient = HttpClients.custom()
+                .setConnectionManager(new InstrumentedConnectionManager(pool, meterRegistry))
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(Timeout.ofMilliseconds(poolWaitTimeoutMillis))
+                        .setResponseTimeout(Timeout.ofMilliseconds(readTimeoutMillis))
+                        .setDefaultKeepAlive(keepAliveSeconds, TimeUnit.SECONDS)
+                        .build())
+                .evictIdleConnections(TimeValue.ofSeconds(keepAliveSeconds))
+                .build();
+
+        return new HttpComponentsClientHttpRequestFactory(httpClient);
+    }
+
     @Bean
-    public RestClient restClient(RestClient.Builder builder) {
-        return builder.baseUrl(apiUrl).build();
+    public RestClient restClient(RestClient.Builder builder, HttpComponentsClientHttpRequestFactory weatherRequestFactory) {
+        return builder.baseUrl(apiUrl)
+                .requestFactory(weatherRequestFactory)
+                // decode /weather responses with the streaming reader instead of full data binding
+                .messageConverters(converters -> converters.addFirst(new OwmWeatherMessageConverter()))
+                .build();
     }
 }
@@ -1,10 +1,13 @@
 package com.example.weathermatebackend.config;
 
 
+import com.example.weathermatebackend.service.MyUserDetailsService;
+import jakarta.servlet.DispatcherType;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpStatus;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.AuthenticationProvider;
 import org.springframework.security.authentication.dao.DaoAuthenticationProvider;
@@ -15,10 +18,9 @@ import org.springframework.security.config.annotation.web.builders.HttpSecurity;
 import org.springframework.security.config.annotation.web.configuration.EnableWebSecurity;
 import org.springframework.security.config.annotation.web.configurers.AbstractHttpConfigurer;
 import org.springframework.security.config.http.SessionCreationPolicy;
-import org.springframework.security.core.userdetails.UserDetailsService;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.security.crypto.password.PasswordEncoder;
 import org.springframework.security.web.SecurityFilterChain;
+import org.springframework.security.web.authentication.HttpStatusEntryPoint;
 import org.springframework.security.web.authentication.UsernamePasswordAuthenticationFilter;
 import org.springframework.web.cors.CorsConfiguration;
 import org.springframework.web.cors.UrlBasedCorsConfigurationSource;
@@ -37,13 +39,24 @@ public class SecurityConfig {
     @Value("${app.cors.allowed-origins}")
     private String[] allowedOrigins;
 
-    private final UserDetailsService userDetailsService;
+    private final MyUserDetailsService userDetailsService;
+
+    // PasswordHasher: BCrypt on its own bounded pool, shared with registration
+    private final PasswordEncoder passwordEncoder;
 
     final JwtFilter jwtFilter;
 
-    public SecurityConfig(UserDetailsService userDetailsService, JwtFilter jwtFilter) {
+    private final LoginThrottleFilter loginThrottleFilter;
+
+    private final RefreshTokenLogoutHandler refreshTokenLogoutHandler;
+
+    public SecurityConfig(MyUserDetailsService userDetailsService, PasswordEncoder passwordEncoder, JwtFilter jwtFilter,
+                          LoginThrottleFilter loginThrottleFilter, RefreshTokenLogoutHandler refreshTokenLogoutHandler) {
         this.userDetailsService = userDetailsService;
+        this.passwordEncoder = passwordEncoder;
         this.jwtFilter = jwtFilter;
+        this.loginThrottleFilter = loginThrottleFilter;
+        this.refreshTokenLogoutHandler = refreshTokenLogoutHandler;
     }
 
     @Bean
@@ -53,15 +66,26 @@ public class SecurityConfig {
                 .cors(withDefaults())
                 .csrf(AbstractHttpConfigurer::disable)
                 .authorizeHttpRequests(requests -> requests
+                        // streamed exports finish on an async dispatch; the original request was already authorized
+                        .dispatcherTypeMatchers(DispatcherType.ASYNC)
+                        .permitAll()
                         .requestMatchers("/register","/login","/refresh")
                         .permitAll()
+                        .requestMatchers("/api/admin/**")
+                        .hasAuthority("ADMIN")
                         .anyRequest().
                         authenticated())
+                // no or unusable token: 401, so clients know to refresh or log in again
+                .exceptionHandling(exceptions -> exceptions
+                        .authenticationEntryPoint(new HttpStatusEntryPoint(HttpStatus.UNAUTHORIZED)))
                 .sessionManagement(session ->
                         session.sessionCreationPolicy(SessionCreationPolicy.STATELESS))
+                // throttled logins are refused before they cost a BCrypt check
+                .addFilterBefore(loginThrottleFilter, UsernamePasswordAuthenticationFilter.class)
                 .addFilterBefore(jwtFilter, UsernamePasswordAuthenticationFilter.class)
                 .logout(logout -> logout
                         .logoutUrl("/logout")  // endpoint for logout
+                        .addLogoutHandler(refreshTokenLogoutHandler) // revokes the refresh token itself
                         .deleteCookies("refreshToken") // removes refresh token cookie
                         .invalidateHttpSession(true)
                         .clearAuthentication(true)
@@ -89,16 +113,13 @@ public class SecurityConfig {
     @Bean
     public AuthenticationProvider authenticationProvider() {
         DaoAuthenticationProvider provider = new DaoAuthenticationProvider(userDetailsService);
-        provider.setPasswordEncoder(passwordEncoder());
+        provider.setPasswordEncoder(passwordEncoder);
+        // hashes below the configured strength are rehashed after a successful login
+        provider.setUserDetailsPasswordService(userDetailsService);
 
         return provider;
     }
 
-    @Bean
-    public PasswordEncoder passwordEncoder() {
-        return new BCryptPasswordEncoder(12);
-    }
-
 
     @Bean
     public AuthenticationManager authenticationManager(AuthenticationConfiguration config) throws Exception {
@@ -0,0 +1,50 @@
+package com.example.weathermatebackend.controller;
+
+import com.example.weathermatebackend.model.UserPrinciple;
+import com.example.weathermatebackend.service.HistoryExportService;
+import org.springframework.http.ContentDisposition;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.core.annotation.AuthenticationPrincipal;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+@RestController
+@RequestMapping("/api")
+public class HistoryExportController {
+
+    private final HistoryExportService exportService;
+
+    public HistoryExportController(HistoryExportService exportService) {
+        this.exportService = exportService;
+    }
+
+    // e.g. /api/history/export?format=csv
+    @GetMapping("/history/export")
+    public ResponseEntity<StreamingResponseBody> exportHistory(@RequestParam(defaultValue = "ndjson") String format,
+                                                               @AuthenticationPrincipal UserPrinciple userPrinciple) {
+        HistoryExportService.Format exportFormat = HistoryExportService.Format.parse(format);
+        int userId = userPrinciple.getUserId();
+        return attachment("history", exportFormat, exportService.exportUser(userId, exportFormat));
+    }
+
+    // every user's history, for analytics; restricted to ADMIN in SecurityConfig
+    @GetMapping("/admin/history/export")
+    public ResponseEntity<StreamingResponseBody> exportAllHistory(@RequestParam(defaultValue = "ndjson") String format) {
+        HistoryExportService.Format exportFormat = HistoryExportService.Format.parse(format);
+        return attachment("history-all", exportFormat, exportService.exportAll(exportFormat));
+    }
+
+    private static ResponseEntity<StreamingResponseBody> attachment(String name, HistoryExportService.Format format,
+                                                                   StreamingResponseBody body) {
+        return ResponseEntity.ok()
+                .contentType(MediaType.parseMediaType(format.contentType()))
+                .header(HttpHeaders.CONTENT_DISPOSITION, ContentDisposition.attachment()
+                        .filename(name + "." + format.extension()).build().toString())
+                .body(body);
+    }
+}
@@ -3,7 +3,6 @@ package com.example.weathermatebackend.controller;
 import com.example.weathermatebackend.dto.AuthResponseDto;
 import com.example.weathermatebackend.dto.UserRegistrationDto;
 import com.example.weathermatebackend.model.User;
-import com.example.weathermatebackend.service.JwtService;
 import com.example.weathermatebackend.service.UserService;
 import jakarta.servlet.http.HttpServletResponse;
 import jakarta.validation.Valid;
@@ -17,11 +16,9 @@ import java.util.Map;
 public class UserController {
 
     private final UserService userService;
-    private final JwtService jwtService;
 
-    public UserController(UserService userService, JwtService jwtService) {
+    public UserController(UserService userService) {
         this.userService = userService;
-        this.jwtService = jwtService;
     }
 
     @PostMapping("/register")
@@ -42,16 +39,16 @@ public class UserController {
     }
 
 
+    // rotates the refresh token: the cookie is replaced and the old token stops working
     @GetMapping("/refresh")
-    public ResponseEntity<?> refreshToken(@CookieValue(value = "refreshToken", required = false) String refreshToken) {
-        if (refreshToken == null || !jwtService.validateToken(refreshToken)) {
+    public ResponseEntity<?> refreshToken(@CookieValue(value = "refreshToken", required = false) String refreshToken,
+                                          HttpServletResponse response) {
+        AuthResponseDto refreshed = userService.refresh(refreshToken, response);
+        if (refreshed == null) {
             return ResponseEntity.status(HttpStatus.UNAUTHORIZED).body("Invalid refresh token");
         }
 
-        String username = jwtService.extractUsername(refreshToken);
-        String newAccessToken = jwtService.generateAccessToken(username);
-
-        return ResponseEntity.ok(Map.of("accessToken", newAccessToken));
+        return ResponseEntity.ok(Map.of("accessToken", refreshed.getAccessToken()));
     }
 
 }
\ No newline at end of file
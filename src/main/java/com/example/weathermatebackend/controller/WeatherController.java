@@ -1,11 +1,18 @@
 package com.example.weathermatebackend.controller;
 
 
-import com.example.weathermatebackend.dto.SearchHistoryDto;
+import com.example.weathermatebackend.dto.CityWeatherDto;
+import com.example.weathermatebackend.dto.HistoryPageDto;
+import com.example.weathermatebackend.dto.TrendingCityDto;
+import com.example.weathermatebackend.dto.UserStatsDto;
 import com.example.weathermatebackend.dto.WeatherDto;
-import com.example.weathermatebackend.model.User;
 import com.example.weathermatebackend.model.UserPrinciple;
+import com.example.weathermatebackend.service.TrendingCities;
+import com.example.weathermatebackend.service.UserStatsService;
+import com.example.weathermatebackend.service.WeatherResult;
 import com.example.weathermatebackend.service.WeatherService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.core.annotation.AuthenticationPrincipal;
 import org.springframework.web.bind.annotation.*;
 
@@ -17,22 +24,53 @@ import java.util.List;
 public class WeatherController {
 
     private final WeatherService weatherService;
+    private final UserStatsService userStatsService;
+    private final TrendingCities trendingCities;
 
-    public WeatherController(WeatherService weatherService) {
+    public WeatherController(WeatherService weatherService, UserStatsService userStatsService,
+                             TrendingCities trendingCities) {
         this.weatherService = weatherService;
+        this.userStatsService = userStatsService;
+        this.trendingCities = trendingCities;
 
     }
 
     @GetMapping("/weather/{city}")
-    public WeatherDto getWeather(@PathVariable String city, @AuthenticationPrincipal UserPrinciple userPrinciple) {
-        User user =  userPrinciple.getUser();
-        return weatherService.fetchWeather(city, user);
+    public ResponseEntity<WeatherDto> getWeather(@PathVariable String city, @AuthenticationPrincipal UserPrinciple userPrinciple) {
+        WeatherResult result = weatherService.fetchWeatherResult(city, userPrinciple.getUserId());
 
+        // Age tells the client how long ago the data left OpenWeatherMap
+        return ResponseEntity.ok()
+                .header(HttpHeaders.AGE, String.valueOf(result.ageSeconds()))
+                .body(result.weather());
+
+    }
+
+    // e.g. /api/weather?cities=London,Paris,Colombo
+    @GetMapping("/weather")
+    public List<CityWeatherDto> getWeatherBatch(@RequestParam List<String> cities, @AuthenticationPrincipal UserPrinciple userPrinciple) {
+        return weatherService.fetchWeatherBatch(cities, userPrinciple.getUserId());
     }
 
+    // e.g. /api/history?size=20, then /api/history?size=20&before=<nextCursor>
     @GetMapping("/history")
-    public List<SearchHistoryDto> getHistory(@AuthenticationPrincipal UserPrinciple userPrinciple) {
-        User user =  userPrinciple.getUser();
-        return weatherService.getHistory(user);
+    public HistoryPageDto getHistory(@RequestParam(required = false) String before,
+                                     @RequestParam(defaultValue = "20") int size,
+                                     @AuthenticationPrincipal UserPrinciple userPrinciple) {
+        return weatherService.getHistory(userPrinciple.getUserId(), before, size);
+    }
+
+    // e.g. /api/stats?top=5
+    @GetMapping("/stats")
+    public UserStatsDto getStats(@RequestParam(defaultValue = "10") int top,
+                                 @AuthenticationPrincipal UserPrinciple userPrinciple) {
+        return userStatsService.getStats(userPrinciple.getUserId(), top);
+    }
+
+    // e.g. /api/trending?window=day&top=5
+    @GetMapping("/trending")
+    public List<TrendingCityDto> getTrending(@RequestParam(defaultValue = "hour") String window,
+                                             @RequestParam(defaultValue = "10") int top) {
+        return trendingCities.getTrending(TrendingCities.Window.parse(window), top);
     }
 }
@@ -0,0 +1,12 @@
+package com.example.weathermatebackend.dto;
+
+/**
+ * Projection: how often a city was searched in a given hour of the day.
+ * cityId is null for cities outside the bundled list.
+ */
+public interface CityHourlyDemandDto {
+    Integer getCityId();
+    String getCity();
+    int getSearchHour();
+    long getSearches();
+}
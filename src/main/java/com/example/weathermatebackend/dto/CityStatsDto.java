@@ -0,0 +1,21 @@
+package com.example.weathermatebackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * A user's search stats for one city.
+ */
+@Data
+@AllArgsConstructor
+public class CityStatsDto {
+    private String city;
+    private Integer cityId;
+    private long searches;
+    private double averageTemperature;
+    private double minTemperature;
+    private double maxTemperature;
+    private LocalDateTime lastSearchedAt;
+}
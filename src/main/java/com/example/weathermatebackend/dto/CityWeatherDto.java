@@ -0,0 +1,24 @@
+package com.example.weathermatebackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * One city in a batch weather response: either weather (with its age) or an error.
+ */
+@Data
+@AllArgsConstructor
+public class CityWeatherDto {
+    private String city;
+    private WeatherDto weather;
+    private Long ageSeconds;
+    private String error;
+
+    public static CityWeatherDto succeeded(String city, WeatherDto weather, long ageSeconds) {
+        return new CityWeatherDto(city, weather, ageSeconds, null);
+    }
+
+    public static CityWeatherDto failed(String city, String error) {
+        return new CityWeatherDto(city, null, null, error);
+    }
+}
@@ -0,0 +1,16 @@
+package com.example.weathermatebackend.dto;
+
+import java.time.LocalDateTime;
+
+/**
+ * Projection for history exports, one row per raw search or per rolled-up day
+ * (searches > 1, temperature is then the day's average).
+ */
+public interface HistoryExportRow {
+    Integer getUserId();
+    String getCity();
+    Integer getCityId();
+    LocalDateTime getSearchedAt();
+    double getTemperature();
+    int getSearches();
+}
@@ -0,0 +1,17 @@
+package com.example.weathermatebackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * One page of a user's search history, newest first.
+ * nextCursor is passed back as ?before= to get the following page; null on the last page.
+ */
+@Data
+@AllArgsConstructor
+public class HistoryPageDto {
+    private List<SearchHistoryDto> items;
+    private String nextCursor;
+}
@@ -15,6 +15,9 @@ import java.time.LocalDateTime;
 public interface SearchHistoryDto {
     long getId();
     String getCity();
+    Integer getCityId();
     LocalDateTime getSearchedAt();
     double getTemperature();
+    // 1 for a single search; for rolled-up history, the day's search count (temperature is then the average)
+    int getSearches();
 }
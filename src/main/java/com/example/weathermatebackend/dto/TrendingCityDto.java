@@ -0,0 +1,16 @@
+package com.example.weathermatebackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+/**
+ * A city trending across all users; searches is a sketch estimate that may overcount slightly.
+ */
+@Data
+@AllArgsConstructor
+public class TrendingCityDto {
+    private String city;
+    private Integer cityId;
+    private String country;
+    private long searches;
+}
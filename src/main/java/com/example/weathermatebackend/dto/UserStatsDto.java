@@ -0,0 +1,17 @@
+package com.example.weathermatebackend.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+
+import java.util.List;
+
+/**
+ * Response of /api/stats: overall counts plus the user's most searched cities.
+ */
+@Data
+@AllArgsConstructor
+public class UserStatsDto {
+    private long totalSearches;
+    private int distinctCities;
+    private List<CityStatsDto> topCities;
+}
@@ -0,0 +1,12 @@
+package com.example.weathermatebackend.exception;
+
+import org.springframework.http.HttpStatus;
+import org.springframework.web.bind.annotation.ResponseStatus;
+
+// client input we reject on purpose; its message is safe to send back
+@ResponseStatus(HttpStatus.BAD_REQUEST) // 400
+public class InvalidRequestException extends RuntimeException {
+    public InvalidRequestException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.weathermatebackend.exception;
+
+/**
+ * The OpenWeatherMap request budget is used up for now; handled like any other
+ * upstream outage (503). background tells whether it was the background lane that ran out,
+ * which says nothing about the budget left for users.
+ */
+public class QuotaExhaustedException extends UpstreamUnavailableException {
+
+    private final boolean background;
+
+    public QuotaExhaustedException(String message, boolean background) {
+        super(message);
+        this.background = background;
+    }
+
+    public boolean isBackground() {
+        return background;
+    }
+}
@@ -2,26 +2,40 @@ package com.example.weathermatebackend.model;
 
 import jakarta.persistence.*;
 import lombok.Data;
+import org.hibernate.annotations.ColumnDefault;
 
 import java.time.LocalDateTime;
+import java.util.Locale;
 
 @Data
 @Entity
 public class SearchHistory {
 
+    // pooled sequence so Hibernate can batch inserts; allocationSize matches hibernate.jdbc.batch_size
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "search_history_seq")
+    @SequenceGenerator(name = "search_history_seq", sequenceName = "search_history_seq", allocationSize = 50)
     private Long id;
 
     private String city;
 
+    // CityIndex ID, null for cities outside the bundled list
+    private Integer cityId;
+
     private LocalDateTime searchedAt;
 
     private double temperature;
 
-    @ManyToOne
-    @JoinColumn(name = "user_id")
-    private User user;
+    // searches collapsed into this row by dedup mode; the default backfills existing rows
+    @ColumnDefault("1")
+    private int hitCount = 1;
 
+    // plain FK column: recording or listing a search never loads the users row
+    @Column(name = "user_id")
+    private Integer userId;
 
+    // what stats and dedup group on: the CityIndex ID, or the lower-cased name for unknown cities
+    public String cityKey() {
+        return cityId != null ? "id:" + cityId : city.toLowerCase(Locale.ROOT);
+    }
 }
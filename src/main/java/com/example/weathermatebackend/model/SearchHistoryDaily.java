@@ -0,0 +1,51 @@
+package com.example.weathermatebackend.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+
+/**
+ * Rolled-up search history: one row per user, city and day.
+ * cityKey is the key the raw tier deduplicates on: the CityIndex ID ("id:42") or, for cities
+ * outside the list, the lower-cased name.
+ * Raw SearchHistory rows older than the retention age are folded into these rows by
+ * SearchHistoryPartitions before their monthly partition is dropped. Temperatures are kept
+ * as min/max/sum so later roll-ups into the same day merge exactly.
+ */
+@Data
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_search_history_daily_user_city_key_day",
+        columnNames = {"user_id", "city_key", "search_day"}),
+        indexes = @Index(name = "idx_search_history_daily_user_time",
+                columnList = "user_id, last_searched_at DESC, id DESC"))
+public class SearchHistoryDaily {
+
+    // rows are only written by native roll-up SQL, so no batching concerns here
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "city_key")
+    private String cityKey;
+
+    private String city;
+
+    private Integer cityId;
+
+    private LocalDate searchDay;
+
+    private int searches;
+
+    private double minTemperature;
+
+    private double maxTemperature;
+
+    private double sumTemperature;
+
+    private LocalDateTime lastSearchedAt;
+}
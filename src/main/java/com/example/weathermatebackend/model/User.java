@@ -1,6 +1,8 @@
 package com.example.weathermatebackend.model;
 
+import com.example.weathermatebackend.service.UserChangeListener;
 import jakarta.persistence.Entity;
+import jakarta.persistence.EntityListeners;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
@@ -11,6 +13,7 @@ import lombok.NoArgsConstructor;
 @AllArgsConstructor
 @Data
 @Entity(name = "users")
+@EntityListeners(UserChangeListener.class)
 @NoArgsConstructor
 public class User {
 
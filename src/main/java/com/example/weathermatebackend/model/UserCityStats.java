@@ -0,0 +1,41 @@
+package com.example.weathermatebackend.model;
+
+import jakarta.persistence.*;
+import lombok.Data;
+
+import java.time.LocalDateTime;
+
+/**
+ * Persisted copy of a user's running stats for one city, written by UserStatsService.
+ * cityKey is the CityIndex ID ("id:42") or, for cities outside the list, the lower-cased name.
+ */
+@Data
+@Entity
+@Table(uniqueConstraints = @UniqueConstraint(name = "uk_user_city_stats_user_city",
+        columnNames = {"user_id", "city_key"}))
+public class UserCityStats {
+
+    @Id
+    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    private Long id;
+
+    @Column(name = "user_id")
+    private Integer userId;
+
+    @Column(name = "city_key")
+    private String cityKey;
+
+    private String city;
+
+    private Integer cityId;
+
+    private long searches;
+
+    private double minTemperature;
+
+    private double maxTemperature;
+
+    private double sumTemperature;
+
+    private LocalDateTime lastSearchedAt;
+}
@@ -6,22 +6,42 @@ import org.springframework.security.core.userdetails.UserDetails;
 
 import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 public class UserPrinciple implements UserDetails {
 
 
     private final User user;
 
+    private final boolean admin;
+
     public UserPrinciple(User users) {
+        this(users, false);
+    }
+
+    public UserPrinciple(User users, boolean admin) {
         this.user = users;
+        this.admin = admin;
     }
 
     public User getUser() {
         return user;
     }
 
+    public int getUserId() {
+        return user.getId();
+    }
+
+    // a copy safe to keep in memory: no password hash, detached from any persistence context
+    public UserPrinciple withoutPassword() {
+        return new UserPrinciple(new User(user.getId(), user.getUsername(), null), admin);
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
+        if (admin) {
+            return List.of(new SimpleGrantedAuthority("USER"), new SimpleGrantedAuthority("ADMIN"));
+        }
         return Collections.singleton(new SimpleGrantedAuthority("USER"));
     }
 
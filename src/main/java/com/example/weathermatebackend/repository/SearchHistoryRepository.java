@@ -1,13 +1,107 @@
 package com.example.weathermatebackend.repository;
 
+import com.example.weathermatebackend.dto.CityHourlyDemandDto;
+import com.example.weathermatebackend.dto.HistoryExportRow;
 import com.example.weathermatebackend.dto.SearchHistoryDto;
 import com.example.weathermatebackend.model.SearchHistory;
-import com.example.weathermatebackend.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 
+import java.time.LocalDateTime;
 import java.util.List;
+import java.util.stream.Stream;
 
 public interface SearchHistoryRepository extends JpaRepository<SearchHistory, Long> {
 
-    List<SearchHistoryDto> findByUserOrderBySearchedAtDesc(User user);
+    // History pages read both tiers: raw rows from search_history and, once those have been
+    // rolled up, one row per user/city/day from search_history_daily (negated IDs keep the
+    // two ID spaces apart). Each branch is an index range scan in page order
+    // (idx_search_history_user_page, idx_search_history_daily_user_time) cut at the page size,
+    // so merging them stays cheap however deep the page is.
+    @Query(value = """
+            (select h.id, h.city, h.city_id as "cityId", h.searched_at as "searchedAt", h.temperature, h.hit_count as searches
+             from search_history h
+             where h.user_id = :userId
+             order by h.searched_at desc, h.id
+             limit :pageSize)
+            union all
+            (select -d.id, d.city, d.city_id, d.last_searched_at, d.sum_temperature / d.searches, d.searches
+             from search_history_daily d
+             where d.user_id = :userId
+             order by d.last_searched_at desc, d.id desc
+             limit :pageSize)
+            order by "searchedAt" desc, id
+            limit :pageSize
+            """, nativeQuery = true)
+    List<SearchHistoryDto> findPage(int userId, int pageSize);
+
+    // searchedAt <= :searchedAt repeats the cursor as a plain bound the planner can use for the range start
+    @Query(value = """
+            (select h.id, h.city, h.city_id as "cityId", h.searched_at as "searchedAt", h.temperature, h.hit_count as searches
+             from search_history h
+             where h.user_id = :userId
+               and h.searched_at <= :searchedAt
+               and (h.searched_at < :searchedAt or h.id > :id)
+             order by h.searched_at desc, h.id
+             limit :pageSize)
+            union all
+            (select -d.id, d.city, d.city_id, d.last_searched_at, d.sum_temperature / d.searches, d.searches
+             from search_history_daily d
+             where d.user_id = :userId
+               and d.last_searched_at <= :searchedAt
+               and (d.last_searched_at < :searchedAt or -d.id > :id)
+             order by d.last_searched_at desc, d.id desc
+             limit :pageSize)
+            order by "searchedAt" desc, id
+            limit :pageSize
+            """, nativeQuery = true)
+    List<SearchHistoryDto> findPageAfter(int userId, LocalDateTime searchedAt, long id, int pageSize);
+
+    // Exports stream rows through a server-side cursor: Postgres only honours the fetch size
+    // inside a transaction, and callers must close the stream. Scalar rows never enter the
+    // persistence context, so memory stays flat however many rows go through.
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = """
+            select h.user_id as "userId", h.city, h.city_id as "cityId", h.searched_at as "searchedAt",
+                   h.temperature, h.hit_count as searches
+            from search_history h
+            where h.user_id = :userId
+            union all
+            select d.user_id, d.city, d.city_id, d.last_searched_at, d.sum_temperature / d.searches, d.searches
+            from search_history_daily d
+            where d.user_id = :userId
+            order by "searchedAt" desc
+            """, nativeQuery = true)
+    Stream<HistoryExportRow> streamByUser(int userId);
+
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "1000"),
+            @QueryHint(name = HibernateHints.HINT_READ_ONLY, value = "true")
+    })
+    @Query(value = """
+            select h.user_id as "userId", h.city, h.city_id as "cityId", h.searched_at as "searchedAt",
+                   h.temperature, h.hit_count as searches
+            from search_history h
+            union all
+            select d.user_id, d.city, d.city_id, d.last_searched_at, d.sum_temperature / d.searches, d.searches
+            from search_history_daily d
+            """, nativeQuery = true)
+    Stream<HistoryExportRow> streamAll();
+
+    // one row per (city, hour of day), so the result stays small however large the table is;
+    // known cities group on their ID whatever the spelling, unknown ones on the folded name
+    @Query("""
+            select h.cityId as cityId, max(h.city) as city, extract(hour from h.searchedAt) as searchHour,
+                   sum(h.hitCount) as searches
+            from SearchHistory h
+            where h.searchedAt >= :since
+            group by h.cityId, case when h.cityId is null then lower(h.city) end, extract(hour from h.searchedAt)
+            """)
+    List<CityHourlyDemandDto> countSearchesByCityAndHour(LocalDateTime since);
 }
@@ -0,0 +1,170 @@
+package com.example.weathermatebackend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.text.Normalizer;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Maps free-form city input to a canonical city with a stable compact ID.
+ * Input is folded before lookup: case, repeated whitespace, punctuation and diacritics
+ * are ignored ("  ŁÓDŹ " and "lodz" are the same city), and an optional ", CC" country
+ * suffix picks between cities sharing a name.
+ * The index is built once from the bundled city list (weather.cities.resource).
+ * Cities that are not in the list still resolve, keyed by their folded spelling.
+ */
+@Component
+public class CityIndex {
+
+    // letters that Unicode decomposition does not reduce to ASCII
+    private static final Map<Character, String> SPECIAL_LETTERS = Map.ofEntries(
+            Map.entry('ł', "l"), Map.entry('Ł', "l"),
+            Map.entry('ø', "o"), Map.entry('Ø', "o"),
+            Map.entry('đ', "d"), Map.entry('Đ', "d"),
+            Map.entry('ð', "d"), Map.entry('Ð', "d"),
+            Map.entry('þ', "th"), Map.entry('Þ', "th"),
+            Map.entry('ß', "ss"),
+            Map.entry('æ', "ae"), Map.entry('Æ', "ae"),
+            Map.entry('œ', "oe"), Map.entry('Œ', "oe"),
+            Map.entry('ı', "i"));
+
+    private static final Map<String, String> COUNTRY_ALIASES = Map.of(
+            "uk", "gb",
+            "usa", "us");
+
+    private final Map<String, CityRef> byName = new HashMap<>();
+    private final Map<String, CityRef> byNameAndCountry = new HashMap<>();
+    private final Map<Integer, CityRef> byId = new HashMap<>();
+
+    public CityIndex(@Value("${weather.cities.resource}") Resource cities) {
+        try (BufferedReader reader = new BufferedReader(
+                new InputStreamReader(cities.getInputStream(), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (!line.isBlank() && !line.startsWith("#")) {
+                    addLine(line);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not load city list " + cities, e);
+        }
+    }
+
+    private void addLine(String line) {
+        // id,name,country[,alias|alias...]
+        String[] fields = line.split(",", 4);
+        int id = Integer.parseInt(fields[0].trim());
+        String name = fields[1].trim();
+        String country = fields[2].trim().toUpperCase(Locale.ROOT);
+        CityRef city = new CityRef(id, name, country, "id:" + id);
+        byId.putIfAbsent(id, city);
+
+        index(fold(name), city);
+        if (fields.length == 4) {
+            for (String alias : fields[3].split("\\|")) {
+                index(fold(alias), city);
+            }
+        }
+    }
+
+    private void index(String foldedName, CityRef city) {
+        // first line wins for bare names, so the list is ordered by preference
+        byName.putIfAbsent(foldedName, city);
+        byNameAndCountry.putIfAbsent(foldedName + "," + city.country().toLowerCase(Locale.ROOT), city);
+    }
+
+    public CityRef resolve(String input) {
+        String folded = fold(input);
+        String name = folded;
+        String country = null;
+
+        int comma = folded.lastIndexOf(',');
+        if (comma >= 0) {
+            String suffix = folded.substring(comma + 1).trim();
+            suffix = COUNTRY_ALIASES.getOrDefault(suffix, suffix);
+            if (suffix.length() == 2) {
+                name = folded.substring(0, comma).trim();
+                country = suffix;
+            } else {
+                // not a country code, e.g. "washington, d.c." → treat the comma as a space
+                name = folded.replace(',', ' ').replaceAll(" +", " ").trim();
+            }
+        }
+
+        CityRef known = country == null ? byName.get(name) : byNameAndCountry.get(name + "," + country);
+        if (known != null) {
+            return known;
+        }
+
+        String display = input.trim().replaceAll("\\s+", " ");
+        String key = country == null ? name : name + "," + country;
+        return new CityRef(0, display, null, "q:" + key);
+    }
+
+    // null for IDs that are not in the bundled list
+    public CityRef byId(int id) {
+        return byId.get(id);
+    }
+
+    public int size() {
+        return byNameAndCountry.size();
+    }
+
+    static String fold(String input) {
+        String decomposed = Normalizer.normalize(input, Normalizer.Form.NFKD);
+        StringBuilder folded = new StringBuilder(decomposed.length());
+        boolean pendingSpace = false;
+
+        for (int i = 0; i < decomposed.length(); i++) {
+            char c = decomposed.charAt(i);
+            if (Character.getType(c) == Character.NON_SPACING_MARK) {
+                continue;
+            }
+
+            String replacement = SPECIAL_LETTERS.get(c);
+            if (replacement != null || Character.isLetterOrDigit(c)) {
+                if (pendingSpace && !folded.isEmpty() && folded.charAt(folded.length() - 1) != ',') {
+                    folded.append(' ');
+                }
+                pendingSpace = false;
+                if (replacement != null) {
+                    folded.append(replacement);
+                } else {
+                    folded.append(Character.toLowerCase(c));
+                }
+            } else if (c == ',') {
+                folded.append(',');
+                pendingSpace = false;
+            } else {
+                // whitespace, hyphens, dots, apostrophes all separate words
+                pendingSpace = true;
+            }
+        }
+        return folded.toString();
+    }
+
+    /**
+     * A resolved city. id is 0 when the input is not in the bundled list;
+     * key is what caches, single-flight and history group on.
+     */
+    public record CityRef(int id, String name, String country, String key) {
+
+        public boolean isKnown() {
+            return id > 0;
+        }
+
+        // what OpenWeatherMap's q= parameter gets
+        public String query() {
+            return country == null ? name : name + "," + country;
+        }
+    }
+}
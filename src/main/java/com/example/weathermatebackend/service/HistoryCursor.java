@@ -0,0 +1,31 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.exception.InvalidRequestException;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.Base64;
+
+/**
+ * Position of the last row on a history page: its (searchedAt, id) sort key.
+ * Clients get it as an opaque URL-safe token and pass it back as ?before= for the next page.
+ */
+public record HistoryCursor(LocalDateTime searchedAt, long id) {
+
+    public String encode() {
+        String raw = searchedAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static HistoryCursor decode(String token) {
+        try {
+            String raw = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+            int separator = raw.lastIndexOf('|');
+            return new HistoryCursor(LocalDateTime.parse(raw.substring(0, separator)),
+                    Long.parseLong(raw.substring(separator + 1)));
+        } catch (IllegalArgumentException | DateTimeParseException | IndexOutOfBoundsException e) {
+            throw new InvalidRequestException("Invalid history cursor");
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.HistoryExportRow;
+import com.example.weathermatebackend.exception.InvalidRequestException;
+import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.util.Iterator;
+import java.util.Locale;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
+
+/**
+ * Streams search history exports (one user or everyone) as NDJSON or CSV.
+ * Rows come from a cursor-backed repository stream inside a read-only transaction and are
+ * written straight to the response; output is pushed to the client every FLUSH_EVERY_ROWS
+ * rows, so neither the result set nor the response body is ever held in memory.
+ */
+@Service
+public class HistoryExportService {
+
+    private static final int FLUSH_EVERY_ROWS = 1000;
+    private static final int WRITE_BUFFER_BYTES = 64 * 1024;
+    private static final JsonFactory JSON = new JsonFactory();
+
+    private final SearchHistoryRepository historyRepository;
+    private final TransactionTemplate readOnlyTransaction;
+
+    public HistoryExportService(SearchHistoryRepository historyRepository, PlatformTransactionManager transactionManager) {
+        this.historyRepository = historyRepository;
+        this.readOnlyTransaction = new TransactionTemplate(transactionManager);
+        this.readOnlyTransaction.setReadOnly(true);
+    }
+
+    public StreamingResponseBody exportUser(int userId, Format format) {
+        return export(() -> historyRepository.streamByUser(userId), format);
+    }
+
+    public StreamingResponseBody exportAll(Format format) {
+        return export(historyRepository::streamAll, format);
+    }
+
+    private StreamingResponseBody export(Supplier<Stream<HistoryExportRow>> query, Format format) {
+        // runs on the async request thread once the controller has returned
+        return out -> readOnlyTransaction.executeWithoutResult(status -> {
+            try (Stream<HistoryExportRow> rows = query.get()) {
+                if (format == Format.CSV) {
+                    writeCsv(rows.iterator(), out);
+                } else {
+                    writeNdjson(rows.iterator(), out);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        });
+    }
+
+    static void writeNdjson(Iterator<HistoryExportRow> rows, OutputStream out) throws IOException {
+        try (JsonGenerator json = JSON.createGenerator(out)) {
+            // the servlet container owns the response stream; lines are separated by us, not Jackson
+            json.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            json.setRootValueSeparator(null);
+            int written = 0;
+            while (rows.hasNext()) {
+                HistoryExportRow row = rows.next();
+                json.writeStartObject();
+                if (row.getUserId() != null) {
+                    json.writeNumberField("userId", row.getUserId());
+                }
+                json.writeStringField("city", row.getCity());
+                if (row.getCityId() != null) {
+                    json.writeNumberField("cityId", row.getCityId());
+                }
+                json.writeStringField("searchedAt", String.valueOf(row.getSearchedAt()));
+                json.writeNumberField("temperature", row.getTemperature());
+                json.writeNumberField("searches", row.getSearches());
+                json.writeEndObject();
+                json.writeRaw('\n');
+                if (++written % FLUSH_EVERY_ROWS == 0) {
+                    json.flush();
+                }
+            }
+        }
+    }
+
+    static void writeCsv(Iterator<HistoryExportRow> rows, OutputStream out) throws IOException {
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), WRITE_BUFFER_BYTES);
+        writer.write("user_id,city,city_id,searched_at,temperature,searches\n");
+        int written = 0;
+        while (rows.hasNext()) {
+            HistoryExportRow row = rows.next();
+            writer.write(row.getUserId() == null ? "" : row.getUserId().toString());
+            writer.write(',');
+            writer.write(csvField(row.getCity()));
+            writer.write(',');
+            writer.write(row.getCityId() == null ? "" : row.getCityId().toString());
+            writer.write(',');
+            writer.write(String.valueOf(row.getSearchedAt()));
+            writer.write(',');
+            writer.write(Double.toString(row.getTemperature()));
+            writer.write(',');
+            writer.write(Integer.toString(row.getSearches()));
+            writer.write('\n');
+            if (++written % FLUSH_EVERY_ROWS == 0) {
+                writer.flush();
+            }
+        }
+        writer.flush();
+    }
+
+    private static String csvField(String value) {
+        if (value == null) {
+            return "";
+        }
+        if (value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+            return value;
+        }
+        return '"' + value.replace("\"", "\"\"") + '"';
+    }
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String contentType() {
+            return contentType;
+        }
+
+        public String extension() {
+            return extension;
+        }
+
+        public static Format parse(String format) {
+            return switch (format.toLowerCase(Locale.ROOT)) {
+                case "ndjson", "json" -> NDJSON;
+                case "csv" -> CSV;
+                default -> throw new InvalidRequestException("Unsupported export format: " + format);
+            };
+        }
+    }
+}
@@ -1,23 +1,53 @@
 package com.example.weathermatebackend.service;
 
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
 import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtException;
+import io.jsonwebtoken.JwtParser;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.io.Decoders;
 import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.stereotype.Service;
 
 import javax.crypto.SecretKey;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.function.Function;
-
-
+import java.util.UUID;
+
+/**
+ * Issues and verifies JWTs. The signing key and the parser are built once; a token is
+ * signature-checked at most once per request through {@link #verify(String)}, and tokens
+ * verified recently are remembered by their SHA-256 digest until they expire, so a client
+ * reusing its access token skips the HMAC and JSON parsing altogether.
+ * Tokens carry the user's ID in the "uid" claim, so requests can be authenticated from
+ * {@link PrincipalCache} without looking the user up by name. Refresh tokens also carry a
+ * random ID (jti) that {@link RevokedTokenStore} tracks once the token is used or logged out.
+ * The "typ" claim tells the two kinds apart, so neither can stand in for the other.
+ * Cache meters are tagged cache=jwt.
+ */
 @Service
 public class JwtService {
-    private final String secretKey;
+
+    public static final String USER_ID_CLAIM = "uid";
+    public static final String TOKEN_TYPE_CLAIM = "typ";
+    public static final String ACCESS_TOKEN = "access";
+    public static final String REFRESH_TOKEN = "refresh";
+
+    private final SecretKey key;
+    private final JwtParser parser;
+    private final Cache<TokenDigest, Claims> verified;
 
     @Value("${jwt.access.expiration}")
     private long accessTokenExpirationMillis;
@@ -25,85 +55,122 @@ public class JwtService {
     @Value("${jwt.refresh.expiration}")
     private long refreshTokenExpirationMillis;
 
-    public JwtService(@Value("${jwt.secret}") String secretKey) {
-        this.secretKey = secretKey;
+    public JwtService(@Value("${jwt.secret}") String secretKey,
+                      @Value("${jwt.verified-cache.max-size}") long verifiedCacheSize,
+                      MeterRegistry meterRegistry) {
+        this.key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(secretKey));
+        this.parser = Jwts.parser().verifyWith(key).build();
+        this.verified = Caffeine.newBuilder()
+                .maximumSize(verifiedCacheSize)
+                // an entry lives exactly as long as the token is valid
+                .expireAfter(Expiry.creating((TokenDigest digest, Claims claims) -> remainingLife(claims)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, verified, "jwt");
     }
 
-    public String generateAccessToken(String username) {
-        return generateToken(username, accessTokenExpirationMillis);
+    public String generateAccessToken(int userId, String username) {
+        return generateToken(userId, username, accessTokenExpirationMillis);
     }
 
-    public String generateRefreshToken(String username) {
-        return generateToken(username, refreshTokenExpirationMillis);
+    // each refresh token gets its own ID (jti), so it can be used once and revoked on logout
+    public String generateRefreshToken(int userId, String username) {
+        return generateToken(userId, username, refreshTokenExpirationMillis, REFRESH_TOKEN, UUID.randomUUID().toString());
     }
 
     // generate token
-    public String generateToken(String username, long jwtExpirationInMillis) {
+    public String generateToken(int userId, String username, long jwtExpirationInMillis) {
+        return generateToken(userId, username, jwtExpirationInMillis, ACCESS_TOKEN, null);
+    }
+
+    private String generateToken(int userId, String username, long jwtExpirationInMillis, String type, String tokenId) {
 
         Map<String , Object> claims = new HashMap<>();
+        claims.put(USER_ID_CLAIM, userId);
+        claims.put(TOKEN_TYPE_CLAIM, type);
 
         return Jwts.builder()
                 .claims()
                 .add(claims)
+                .id(tokenId)
                 .subject(username)
                 .issuedAt(new Date(System.currentTimeMillis()))
                 .expiration(new Date(System.currentTimeMillis() +  jwtExpirationInMillis))
                 .and()
-                .signWith(getKey())
+                .signWith(key)
                 .compact();
     }
 
-    private SecretKey getKey() {
-        byte[] keyBytes = Decoders.BASE64.decode(secretKey);
-        return Keys.hmacShaKeyFor(keyBytes);
-
+    /**
+     * Verified, unexpired claims of the token, or null if the signature is wrong, the token
+     * is malformed or it has expired.
+     */
+    public Claims verify(String token) {
+        if (token == null || token.isEmpty()) {
+            return null;
+        }
+        TokenDigest digest = TokenDigest.of(token);
+        Claims claims = verified.getIfPresent(digest);
+        if (claims != null) {
+            return claims;
+        }
+        try {
+            // checks signature and expiration in one pass
+            claims = parser.parseSignedClaims(token).getPayload();
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+        if (claims.getExpiration() != null) {
+            verified.put(digest, claims);
+        }
+        return claims;
     }
 
     public String extractUsername(String token) {
-        // extract the username from jwt token
-        return extractClaim(token, Claims::getSubject);
+        Claims claims = verify(token);
+        return claims == null ? null : claims.getSubject();
     }
 
-
-    private <T> T extractClaim(String token, Function<Claims, T> claimResolver) {
-        final Claims claims = extractAllClaims(token);
-        return claimResolver.apply(claims);
+    public boolean validateToken(String token, UserDetails userDetails) {
+        Claims claims = verify(token);
+        return claims != null && userDetails.getUsername().equals(claims.getSubject());
     }
 
-    private Claims extractAllClaims(String token) {
-        return Jwts.parser()
-                .verifyWith(getKey())
-                .build()
-                .parseSignedClaims(token)
-                .getPayload();
+    public boolean validateToken(String token) {
+        return verify(token) != null;
     }
 
-    public boolean validateToken(String token, UserDetails userDetails) {
-        try {
-            final String userName = extractUsername(token); // parseClaimsJws happens here
-            return (userName.equals(userDetails.getUsername()) && !isTokenExpired(token));
-        } catch (Exception e) {
-            // expired, malformed, or any invalid token, return false
-            return false;
-        }
+    // only access tokens authenticate API calls; a refresh token is good for /refresh alone
+    public static boolean isAccessToken(Claims claims) {
+        return ACCESS_TOKEN.equals(claims.get(TOKEN_TYPE_CLAIM, String.class));
     }
 
+    public static boolean isRefreshToken(Claims claims) {
+        return REFRESH_TOKEN.equals(claims.get(TOKEN_TYPE_CLAIM, String.class));
+    }
 
-    public boolean validateToken(String token) {
-        try {
-            extractAllClaims(token);
-            return true;
-        } catch (Exception e) {
-            return false;
-        }
+    // null for tokens issued before the claim existed
+    public static Integer userId(Claims claims) {
+        return claims.get(USER_ID_CLAIM, Integer.class);
     }
 
-    private boolean isTokenExpired(String token) {
-        return extractExpiration(token).before(new Date());
+    private static Duration remainingLife(Claims claims) {
+        Duration remaining = Duration.ofMillis(claims.getExpiration().getTime() - System.currentTimeMillis());
+        return remaining.isNegative() ? Duration.ZERO : remaining;
     }
 
-    private Date extractExpiration(String token) {
-        return extractClaim(token, Claims::getExpiration);
+    // 256-bit token fingerprint; cheap to compare and does not keep the token itself in memory
+    private record TokenDigest(long a, long b, long c, long d) {
+
+        static TokenDigest of(String token) {
+            try {
+                ByteBuffer hash = ByteBuffer.wrap(MessageDigest.getInstance("SHA-256")
+                        .digest(token.getBytes(StandardCharsets.US_ASCII)));
+                return new TokenDigest(hash.getLong(), hash.getLong(), hash.getLong(), hash.getLong());
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException("SHA-256 is not available", e);
+            }
+        }
     }
 }
 
@@ -0,0 +1,150 @@
+package com.example.weathermatebackend.service;
+
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caps login attempts per client IP and per username over a sliding window of
+ * app.auth.throttle.window.seconds, so password guessing is turned away before BCrypt runs.
+ * Each key has a sliding-window counter (the previous and the current fixed window, the
+ * previous one weighted by how much of it still overlaps) packed into one AtomicLong and
+ * updated by CAS, so no lock is taken. A refused attempt is not counted.
+ * Counters live in Caffeine caches capped at app.auth.throttle.max-keys and dropped after a
+ * window without attempts. A successful login clears its username's counter.
+ * Meters: auth.login.throttled (tag scope=ip|username); cache meters are tagged
+ * cache=login-throttle-ip and cache=login-throttle-username.
+ */
+@Service
+public class LoginThrottle {
+
+    private final int maxAttemptsPerIp;
+    private final int maxAttemptsPerUsername;
+    private final long windowMillis;
+
+    private final Cache<String, SlidingWindow> byIp;
+    private final Cache<String, SlidingWindow> byUsername;
+
+    private final Counter throttledByIp;
+    private final Counter throttledByUsername;
+
+    public LoginThrottle(@Value("${app.auth.throttle.ip.max-attempts}") int maxAttemptsPerIp,
+                         @Value("${app.auth.throttle.username.max-attempts}") int maxAttemptsPerUsername,
+                         @Value("${app.auth.throttle.window.seconds}") long windowSeconds,
+                         @Value("${app.auth.throttle.max-keys}") long maxKeys,
+                         MeterRegistry meterRegistry) {
+        this.maxAttemptsPerIp = maxAttemptsPerIp;
+        this.maxAttemptsPerUsername = maxAttemptsPerUsername;
+        this.windowMillis = Duration.ofSeconds(windowSeconds).toMillis();
+
+        // after a full window without attempts a counter is back to zero anyway
+        this.byIp = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofMillis(windowMillis * 2))
+                .recordStats()
+                .build();
+        this.byUsername = Caffeine.newBuilder()
+                .maximumSize(maxKeys)
+                .expireAfterAccess(Duration.ofMillis(windowMillis * 2))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, byIp, "login-throttle-ip");
+        CaffeineCacheMetrics.monitor(meterRegistry, byUsername, "login-throttle-username");
+
+        this.throttledByIp = throttledCounter("ip", meterRegistry);
+        this.throttledByUsername = throttledCounter("username", meterRegistry);
+    }
+
+    private static Counter throttledCounter(String scope, MeterRegistry meterRegistry) {
+        return Counter.builder("auth.login.throttled")
+                .description("Login attempts refused before authentication")
+                .tag("scope", scope)
+                .register(meterRegistry);
+    }
+
+    /**
+     * Counts a login attempt. Returns 0 if it may go ahead, otherwise the milliseconds until
+     * an attempt would be allowed again. username may be null when the body has none.
+     */
+    public long tryAcquire(String clientIp, String username) {
+        return tryAcquire(clientIp, username, System.currentTimeMillis());
+    }
+
+    long tryAcquire(String clientIp, String username, long nowMillis) {
+        long retryAfter = byIp.get(clientIp, key -> new SlidingWindow())
+                .tryAcquire(maxAttemptsPerIp, windowMillis, nowMillis);
+        if (retryAfter > 0) {
+            throttledByIp.increment();
+            return retryAfter;
+        }
+        if (username == null) {
+            return 0;
+        }
+        retryAfter = byUsername.get(username, key -> new SlidingWindow())
+                .tryAcquire(maxAttemptsPerUsername, windowMillis, nowMillis);
+        if (retryAfter > 0) {
+            throttledByUsername.increment();
+        }
+        return retryAfter;
+    }
+
+    // the right password was given, so earlier misses were the user's own
+    public void onSuccess(String username) {
+        byUsername.invalidate(username);
+    }
+
+    /**
+     * State layout: window index (upper 32 bits), previous window's count (16 bits),
+     * current window's count (16 bits). Counts saturate at 65535, far above any limit.
+     */
+    static final class SlidingWindow {
+
+        private static final int MAX_COUNT = 0xFFFF;
+
+        private final AtomicLong state = new AtomicLong();
+
+        long tryAcquire(int limit, long windowMillis, long nowMillis) {
+            long window = nowMillis / windowMillis;
+            long elapsed = nowMillis - window * windowMillis;
+            while (true) {
+                long current = state.get();
+                long stateWindow = current >>> 32;
+                int previousCount = (int) (current >>> 16) & MAX_COUNT;
+                int currentCount = (int) current & MAX_COUNT;
+                if (stateWindow != (window & 0xFFFFFFFFL)) {
+                    previousCount = stateWindow == ((window - 1) & 0xFFFFFFFFL) ? currentCount : 0;
+                    currentCount = 0;
+                }
+
+                double estimate = previousCount * (1 - (double) elapsed / windowMillis) + currentCount;
+                if (estimate + 1 > limit) {
+                    return retryAfter(limit, previousCount, currentCount, windowMillis, elapsed);
+                }
+
+                long next = (window << 32) | ((long) previousCount << 16) | Math.min(currentCount + 1, MAX_COUNT);
+                if (state.compareAndSet(current, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        // time until previous * (1 - elapsed / window) + current + 1 <= limit
+        private static long retryAfter(int limit, int previousCount, int currentCount, long windowMillis, long elapsed) {
+            if (currentCount + 1 <= limit) {
+                // the previous window's share decays enough before this window ends
+                double overlap = (double) (limit - currentCount - 1) / previousCount;
+                return Math.max(1, (long) Math.ceil((1 - overlap) * windowMillis) - elapsed);
+            }
+            // this window's count becomes the previous one and has to decay in turn
+            double overlap = (double) (limit - 1) / currentCount;
+            return windowMillis - elapsed + (long) Math.ceil((1 - overlap) * windowMillis);
+        }
+    }
+}
@@ -4,13 +4,21 @@ package com.example.weathermatebackend.service;
 import com.example.weathermatebackend.model.User;
 import com.example.weathermatebackend.model.UserPrinciple;
 import com.example.weathermatebackend.repository.UserRepository;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsPasswordService;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.stereotype.Service;
 
+import java.util.Set;
+
 @Service
-public class MyUserDetailsService implements UserDetailsService {
+public class MyUserDetailsService implements UserDetailsService, UserDetailsPasswordService {
+
+    // usernames granted ADMIN, e.g. for the all-users history export
+    @Value("${app.admin.usernames}")
+    private Set<String> adminUsernames = Set.of();
 
     private final UserRepository userRepository;
 
@@ -27,6 +35,24 @@ public class MyUserDetailsService implements UserDetailsService {
             System.out.println("user not found");
             throw new UsernameNotFoundException("user not found");
         }
-        return new UserPrinciple(user);
+        return new UserPrinciple(user, adminUsernames.contains(user.getUsername()));
+    }
+
+    public UserPrinciple loadUserById(int userId) throws UsernameNotFoundException {
+        User user = userRepository.findById(userId)
+                .orElseThrow(() -> new UsernameNotFoundException("user not found"));
+        return new UserPrinciple(user, adminUsernames.contains(user.getUsername()));
+    }
+
+    /**
+     * Stores a rehash made after a successful login; saving the user also evicts it from
+     * the principal cache.
+     */
+    @Override
+    public UserDetails updatePassword(UserDetails user, String newPassword) {
+        User entity = ((UserPrinciple) user).getUser();
+        entity.setPassword(newPassword);
+        User saved = userRepository.save(entity);
+        return new UserPrinciple(saved, adminUsernames.contains(saved.getUsername()));
     }
 }
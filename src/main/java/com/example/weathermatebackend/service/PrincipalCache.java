@@ -0,0 +1,70 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.model.UserPrinciple;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+
+/**
+ * Authenticated principals by user ID, so a request with a valid token costs no users query.
+ * Entries are loaded on first use, hold no password hash, and live for
+ * app.auth.principal-cache.ttl.seconds at most. Changes made through JPA evict the user
+ * once the change commits (see {@link UserChangeListener}); anything else that changes or removes users
+ * must call {@link #invalidate(int)} or {@link #invalidateAll()}.
+ * Cache meters are tagged cache=principals.
+ */
+@Service
+public class PrincipalCache {
+
+    private final MyUserDetailsService userDetailsService;
+    private final Cache<Integer, UserPrinciple> principals;
+
+    public PrincipalCache(MyUserDetailsService userDetailsService,
+                          @Value("${app.auth.principal-cache.max-size}") long maxSize,
+                          @Value("${app.auth.principal-cache.ttl.seconds}") long ttlSeconds,
+                          MeterRegistry meterRegistry) {
+        this.userDetailsService = userDetailsService;
+        this.principals = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                .expireAfterWrite(Duration.ofSeconds(ttlSeconds))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, principals, "principals");
+    }
+
+    /**
+     * The principal a verified token belongs to, or null when the user no longer exists or
+     * was renamed since the token was issued.
+     */
+    public UserPrinciple resolve(Claims claims) {
+        Integer userId = JwtService.userId(claims);
+        UserPrinciple principal;
+        try {
+            if (userId == null) {
+                // tokens issued before they carried the ID
+                principal = ((UserPrinciple) userDetailsService.loadUserByUsername(claims.getSubject())).withoutPassword();
+                principals.put(principal.getUserId(), principal);
+            } else {
+                principal = principals.get(userId, id -> userDetailsService.loadUserById(id).withoutPassword());
+            }
+        } catch (UsernameNotFoundException e) {
+            return null;
+        }
+        return principal.getUsername().equals(claims.getSubject()) ? principal : null;
+    }
+
+    public void invalidate(int userId) {
+        principals.invalidate(userId);
+    }
+
+    public void invalidateAll() {
+        principals.invalidateAll();
+    }
+}
@@ -0,0 +1,303 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.SearchHistoryDto;
+import com.example.weathermatebackend.model.SearchHistory;
+import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * The newest searches of recently active users, so first history pages are answered without
+ * a query. Each user gets a fixed-capacity ring of primitive arrays (ID, timestamp, temperature,
+ * search count, city ID), ordered like the history page query. A ring is loaded from the
+ * database on the user's first read and then kept current from every saved history batch,
+ * including dedup merges. Rings are dropped after weather.history.recent.idle.minutes without
+ * a read, and their number is capped so all rings together stay within
+ * weather.history.recent.max-memory.mb. Cache meters are tagged cache=recent-history.
+ */
+@Component
+public class RecentHistoryBuffer implements SearchHistoryListener {
+
+    // per entry: id, searchedAt, temperature (8 bytes each), searches, cityId (4 each), name reference
+    private static final long BYTES_PER_ENTRY = 8 * 3 + 4 * 2 + 8;
+    private static final long BYTES_PER_RING = 128;
+
+    private final SearchHistoryRepository historyRepository;
+    private final CityIndex cityIndex;
+    private final SearchHistoryDeduplicator deduplicator;
+    private final int capacity;
+    private final Cache<Integer, Ring> rings;
+
+    public RecentHistoryBuffer(SearchHistoryRepository historyRepository, CityIndex cityIndex,
+                               SearchHistoryDeduplicator deduplicator,
+                               @Value("${weather.history.recent.capacity}") int capacity,
+                               @Value("${weather.history.recent.max-memory.mb}") long maxMemoryMb,
+                               @Value("${weather.history.recent.idle.minutes}") long idleMinutes,
+                               MeterRegistry meterRegistry) {
+        this.historyRepository = historyRepository;
+        this.cityIndex = cityIndex;
+        this.deduplicator = deduplicator;
+        this.capacity = capacity;
+
+        long ringBytes = BYTES_PER_RING + capacity * BYTES_PER_ENTRY;
+        this.rings = Caffeine.newBuilder()
+                .maximumSize(Math.max(1, maxMemoryMb * 1024 * 1024 / ringBytes))
+                .expireAfterAccess(Duration.ofMinutes(idleMinutes))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, rings, "recent-history");
+    }
+
+    /**
+     * The user's newest limit rows, or null when the ring cannot tell them apart from what
+     * the database would return (limit beyond the capacity).
+     */
+    public List<SearchHistoryDto> firstPage(int userId, int limit) {
+        if (limit > capacity) {
+            return null;
+        }
+        return rings.get(userId, this::load).page(limit);
+    }
+
+    @Override
+    public void onPersisted(List<SearchHistory> batch) {
+        boolean dedup = deduplicator.isEnabled();
+        long windowMicros = deduplicator.getWindow().toNanos() / 1000;
+        for (SearchHistory history : batch) {
+            if (history.getUserId() == null || history.getSearchedAt() == null) {
+                continue;
+            }
+            // computeIfPresent waits for a load in flight, so the row lands in the freshly loaded ring
+            rings.asMap().computeIfPresent(history.getUserId(),
+                    (userId, ring) -> ring.apply(history, dedup, windowMicros) ? ring : null);
+        }
+    }
+
+    // rolled-up rows change ID and shape, so rings are rebuilt on the next read
+    public void invalidateAll() {
+        rings.invalidateAll();
+    }
+
+    private Ring load(Integer userId) {
+        List<SearchHistoryDto> rows = historyRepository.findPage(userId, capacity);
+        Ring ring = new Ring(capacity);
+        for (SearchHistoryDto row : rows) {
+            ring.insert(row.getId(), micros(row.getSearchedAt()), row.getTemperature(), row.getSearches(),
+                    row.getCityId(), row.getCity());
+        }
+        ring.complete = rows.size() < capacity;
+        return ring;
+    }
+
+    private static long micros(LocalDateTime time) {
+        // Postgres keeps microseconds, so the ring and the cursor agree with the stored value
+        return time.toEpochSecond(ZoneOffset.UTC) * 1_000_000 + time.getNano() / 1000;
+    }
+
+    private static LocalDateTime time(long micros) {
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(micros, 1_000_000),
+                (int) Math.floorMod(micros, 1_000_000) * 1000, ZoneOffset.UTC);
+    }
+
+    /**
+     * Newest first by (searchedAt desc, id asc), the order of the history page query.
+     * Logical slot i lives at (head + i) % capacity, so the common case of a new newest row
+     * is a single write; anything else shifts the slots after it.
+     */
+    private final class Ring {
+
+        private final long[] ids;
+        private final long[] searchedAt;
+        private final double[] temperatures;
+        private final int[] searches;
+        private final int[] cityIds;
+        // only for cities outside the index (or renamed in it); otherwise the index supplies the name
+        private final String[] names;
+        private int head;
+        private int count;
+        // true while the ring holds every row the user has
+        private boolean complete;
+
+        Ring(int capacity) {
+            ids = new long[capacity];
+            searchedAt = new long[capacity];
+            temperatures = new double[capacity];
+            searches = new int[capacity];
+            cityIds = new int[capacity];
+            names = new String[capacity];
+        }
+
+        synchronized List<SearchHistoryDto> page(int limit) {
+            if (count < limit && !complete) {
+                return null;
+            }
+            int size = Math.min(limit, count);
+            List<SearchHistoryDto> page = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                int slot = slot(i);
+                int cityId = cityIds[slot];
+                page.add(new RecentSearch(ids[slot], cityName(cityId, names[slot]), cityId == 0 ? null : cityId,
+                        time(searchedAt[slot]), temperatures[slot], searches[slot]));
+            }
+            return page;
+        }
+
+        /**
+         * Mirrors what the writer just stored. Rows the ring already has (it was loaded after
+         * they were committed) are skipped. Returns false when the row cannot be placed.
+         */
+        synchronized boolean apply(SearchHistory history, boolean dedup, long windowMicros) {
+            if (history.getId() == null) {
+                return false;
+            }
+            long at = micros(history.getSearchedAt());
+            int cityId = history.getCityId() == null ? 0 : history.getCityId();
+
+            if (dedup) {
+                // same rule as the upsert: the newest row of the city within the window absorbs the search
+                for (int i = 0; i < count && searchedAt[slot(i)] >= at - windowMicros; i++) {
+                    int slot = slot(i);
+                    if (!sameCity(slot, cityId, history.getCity())) {
+                        continue;
+                    }
+                    if (searchedAt[slot] >= at) {
+                        return true;
+                    }
+                    long id = ids[slot];
+                    int hits = searches[slot] + history.getHitCount();
+                    remove(i);
+                    insert(id, at, history.getTemperature(), hits, history.getCityId(), history.getCity());
+                    return true;
+                }
+            }
+
+            for (int i = 0; i < count; i++) {
+                if (ids[slot(i)] == history.getId()) {
+                    return true;
+                }
+            }
+            insert(history.getId(), at, history.getTemperature(), history.getHitCount(),
+                    history.getCityId(), history.getCity());
+            return true;
+        }
+
+        void insert(long id, long at, double temperature, int hits, Integer cityId, String city) {
+            int position = 0;
+            while (position < count && (at < searchedAt[slot(position)]
+                    || (at == searchedAt[slot(position)] && id > ids[slot(position)]))) {
+                position++;
+            }
+            if (position == ids.length) {
+                // older than everything kept
+                complete = false;
+                return;
+            }
+
+            if (position == 0) {
+                head = Math.floorMod(head - 1, ids.length);
+            } else {
+                int last = Math.min(count, ids.length - 1);
+                for (int i = last; i > position; i--) {
+                    copy(slot(i - 1), slot(i));
+                }
+            }
+            if (count == ids.length) {
+                complete = false;
+            } else {
+                count++;
+            }
+
+            int slot = slot(position);
+            int index = cityId == null ? 0 : cityId;
+            ids[slot] = id;
+            searchedAt[slot] = at;
+            temperatures[slot] = temperature;
+            searches[slot] = hits;
+            cityIds[slot] = index;
+            names[slot] = Objects.equals(cityName(index, null), city) ? null : city;
+        }
+
+        private void remove(int position) {
+            for (int i = position; i < count - 1; i++) {
+                copy(slot(i + 1), slot(i));
+            }
+            count--;
+            names[slot(count)] = null;
+        }
+
+        private boolean sameCity(int slot, int cityId, String city) {
+            if (cityId != 0 || cityIds[slot] != 0) {
+                return cityIds[slot] == cityId;
+            }
+            return names[slot] != null && city != null
+                    && names[slot].toLowerCase(Locale.ROOT).equals(city.toLowerCase(Locale.ROOT));
+        }
+
+        private void copy(int from, int to) {
+            ids[to] = ids[from];
+            searchedAt[to] = searchedAt[from];
+            temperatures[to] = temperatures[from];
+            searches[to] = searches[from];
+            cityIds[to] = cityIds[from];
+            names[to] = names[from];
+        }
+
+        private int slot(int position) {
+            return (head + position) % ids.length;
+        }
+    }
+
+    private String cityName(int cityId, String name) {
+        if (name != null || cityId == 0) {
+            return name;
+        }
+        CityIndex.CityRef city = cityIndex.byId(cityId);
+        return city == null ? null : city.name();
+    }
+
+    private record RecentSearch(long id, String city, Integer cityId, LocalDateTime searchedAt,
+                                double temperature, int searches) implements SearchHistoryDto {
+
+        @Override
+        public long getId() {
+            return id;
+        }
+
+        @Override
+        public String getCity() {
+            return city;
+        }
+
+        @Override
+        public Integer getCityId() {
+            return cityId;
+        }
+
+        @Override
+        public LocalDateTime getSearchedAt() {
+            return searchedAt;
+        }
+
+        @Override
+        public double getTemperature() {
+            return temperature;
+        }
+
+        @Override
+        public int getSearches() {
+            return searches;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package com.example.weathermatebackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * IDs (jti) of refresh tokens that were used or logged out, kept until the token itself
+ * expires. IDs are UUIDs and are stored as two longs with their token's expiry in an
+ * open-addressing table; a Bloom filter sized for app.auth.revocation.expected-entries at
+ * app.auth.revocation.false-positive-rate sits in front, so checking a token that was never
+ * revoked reads a few bits and takes no lock. Neither path allocates.
+ * Expired IDs are dropped every app.auth.revocation.purge.interval.millis by rebuilding
+ * both structures, which is also when the filter grows with the table.
+ * The store is written to app.auth.revocation.snapshot.path on the same interval and on
+ * shutdown, and read back at startup, so a restart does not bring revoked tokens back.
+ *
+ * Snapshot layout (big-endian):
+ *   int magic, int version, int count, then per entry: long msb, long lsb, long expiresAtMillis
+ */
+@Component
+public class RevokedTokenStore {
+
+    private static final Logger log = LoggerFactory.getLogger(RevokedTokenStore.class);
+
+    private static final int MAGIC = 0x574D5254; // "WMRT"
+    private static final int VERSION = 1;
+
+    private final int expectedEntries;
+    private final double falsePositiveRate;
+    private final boolean snapshotEnabled;
+    private final Path path;
+
+    private volatile BloomFilter filter;
+
+    // guarded by this; expiresAt of 0 marks an empty slot
+    private long[] msbs;
+    private long[] lsbs;
+    private long[] expiresAt;
+    private int size;
+
+    private final Counter falsePositives;
+
+    public RevokedTokenStore(@Value("${app.auth.revocation.expected-entries}") int expectedEntries,
+                             @Value("${app.auth.revocation.false-positive-rate}") double falsePositiveRate,
+                             @Value("${app.auth.revocation.snapshot.enabled}") boolean snapshotEnabled,
+                             @Value("${app.auth.revocation.snapshot.path}") Path path,
+                             MeterRegistry meterRegistry) {
+        this.expectedEntries = expectedEntries;
+        this.falsePositiveRate = falsePositiveRate;
+        this.snapshotEnabled = snapshotEnabled;
+        this.path = path;
+        this.filter = new BloomFilter(expectedEntries, falsePositiveRate);
+        allocate(expectedEntries);
+
+        this.falsePositives = Counter.builder("auth.revocation.bloom.false-positives")
+                .description("Revocation checks the Bloom filter passed on to the exact table in vain")
+                .register(meterRegistry);
+        Gauge.builder("auth.revocation.size", this, RevokedTokenStore::size)
+                .description("Revoked refresh tokens not yet expired")
+                .register(meterRegistry);
+    }
+
+    /**
+     * Revokes the token until expiresAtMillis. Returns false if it was already revoked or
+     * the ID is not a UUID, so of two concurrent uses of one refresh token only one wins.
+     */
+    public boolean revoke(String jti, long expiresAtMillis) {
+        if (!isUuid(jti)) {
+            return false;
+        }
+        return revoke(msb(jti), lsb(jti), Math.max(expiresAtMillis, 1));
+    }
+
+    // IDs that are not UUIDs were never issued here, so they count as revoked
+    public boolean isRevoked(String jti) {
+        if (!isUuid(jti)) {
+            return true;
+        }
+        long msb = msb(jti);
+        long lsb = lsb(jti);
+        if (!filter.mightContain(msb, lsb)) {
+            return false;
+        }
+        synchronized (this) {
+            if (indexOf(msb, lsb) >= 0) {
+                return true;
+            }
+        }
+        falsePositives.increment();
+        return false;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    @Scheduled(fixedDelayString = "${app.auth.revocation.purge.interval.millis}",
+            initialDelayString = "${app.auth.revocation.purge.interval.millis}")
+    public void purgeAndSnapshot() {
+        purgeExpired(System.currentTimeMillis());
+        if (!snapshotEnabled) {
+            return;
+        }
+        try {
+            int written = save();
+            log.debug("Wrote {} revoked refresh tokens to {}", written, path);
+        } catch (IOException e) {
+            log.warn("Could not write revoked token snapshot {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        purgeAndSnapshot();
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (!snapshotEnabled || !Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            int restored = load();
+            log.info("Restored {} revoked refresh tokens from {}", restored, path);
+        } catch (IOException | RuntimeException e) {
+            // losing the list would let logged-out tokens back in until they expire, so say so loudly
+            log.error("Ignoring unreadable revoked token snapshot {}", path, e);
+        }
+    }
+
+    synchronized void purgeExpired(long nowMillis) {
+        long[] oldMsbs = msbs;
+        long[] oldLsbs = lsbs;
+        long[] oldExpiresAt = expiresAt;
+        int live = 0;
+        for (long expiry : oldExpiresAt) {
+            if (expiry > nowMillis) {
+                live++;
+            }
+        }
+        // lock-free checks keep using the old filter, a superset of the new one, until the swap
+        int entries = Math.max(expectedEntries, live * 2);
+        BloomFilter rebuilt = new BloomFilter(entries, falsePositiveRate);
+        allocate(entries);
+        for (int i = 0; i < oldExpiresAt.length; i++) {
+            if (oldExpiresAt[i] > nowMillis) {
+                insert(oldMsbs[i], oldLsbs[i], oldExpiresAt[i], rebuilt);
+            }
+        }
+        filter = rebuilt;
+    }
+
+    private synchronized boolean revoke(long msb, long lsb, long expiry) {
+        if (indexOf(msb, lsb) >= 0) {
+            return false;
+        }
+        insert(msb, lsb, expiry, filter);
+        return true;
+    }
+
+    private void insert(long msb, long lsb, long expiry, BloomFilter target) {
+        if ((size + 1) * 2 > expiresAt.length) {
+            grow();
+        }
+        int slot = slot(msb, lsb, expiresAt.length);
+        while (expiresAt[slot] != 0) {
+            slot = (slot + 1) & (expiresAt.length - 1);
+        }
+        msbs[slot] = msb;
+        lsbs[slot] = lsb;
+        expiresAt[slot] = expiry;
+        size++;
+        target.put(msb, lsb);
+    }
+
+    private int indexOf(long msb, long lsb) {
+        int slot = slot(msb, lsb, expiresAt.length);
+        while (expiresAt[slot] != 0) {
+            if (msbs[slot] == msb && lsbs[slot] == lsb) {
+                return slot;
+            }
+            slot = (slot + 1) & (expiresAt.length - 1);
+        }
+        return -1;
+    }
+
+    // the filter keeps its size; the next purge resizes it for the larger table
+    private void grow() {
+        long[] oldMsbs = msbs;
+        long[] oldLsbs = lsbs;
+        long[] oldExpiresAt = expiresAt;
+        msbs = new long[oldExpiresAt.length * 2];
+        lsbs = new long[msbs.length];
+        expiresAt = new long[msbs.length];
+        for (int i = 0; i < oldExpiresAt.length; i++) {
+            if (oldExpiresAt[i] != 0) {
+                int slot = slot(oldMsbs[i], oldLsbs[i], expiresAt.length);
+                while (expiresAt[slot] != 0) {
+                    slot = (slot + 1) & (expiresAt.length - 1);
+                }
+                msbs[slot] = oldMsbs[i];
+                lsbs[slot] = oldLsbs[i];
+                expiresAt[slot] = oldExpiresAt[i];
+            }
+        }
+    }
+
+    private void allocate(int entries) {
+        // at most half full, so probe chains stay short
+        int capacity = Integer.highestOneBit(Math.max(entries, 8) * 2 - 1) << 1;
+        msbs = new long[capacity];
+        lsbs = new long[capacity];
+        expiresAt = new long[capacity];
+        size = 0;
+    }
+
+    private static int slot(long msb, long lsb, int capacity) {
+        return (int) mix(msb ^ lsb) & (capacity - 1);
+    }
+
+    // murmur3 finalizer
+    private static long mix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    // runs under the store's lock, so the count matches the entries written after it
+    synchronized int save() throws IOException {
+        return SnapshotFile.write(path, MAGIC, VERSION, out -> {
+            out.writeInt(size);
+            for (int i = 0; i < expiresAt.length; i++) {
+                if (expiresAt[i] != 0) {
+                    out.writeLong(msbs[i]);
+                    out.writeLong(lsbs[i]);
+                    out.writeLong(expiresAt[i]);
+                }
+            }
+            return size;
+        });
+    }
+
+    int load() throws IOException {
+        return SnapshotFile.read(path, MAGIC, VERSION, "revoked token snapshot", buffer -> {
+            int count = buffer.getInt();
+            int restored = 0;
+            // IDs whose token expired while we were down are not worth a slot
+            long now = System.currentTimeMillis();
+            for (int i = 0; i < count; i++) {
+                long msb = buffer.getLong();
+                long lsb = buffer.getLong();
+                long expiry = buffer.getLong();
+                if (expiry > now && revoke(msb, lsb, expiry)) {
+                    restored++;
+                }
+            }
+            return restored;
+        });
+    }
+
+    // canonical 8-4-4-4-12 form, as written by UUID.toString
+    static boolean isUuid(String id) {
+        if (id == null || id.length() != 36) {
+            return false;
+        }
+        for (int i = 0; i < 36; i++) {
+            char c = id.charAt(i);
+            if (i == 8 || i == 13 || i == 18 || i == 23) {
+                if (c != '-') {
+                    return false;
+                }
+            } else if (Character.digit(c, 16) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static long msb(String uuid) {
+        return hex(uuid, 14, 18, hex(uuid, 9, 13, hex(uuid, 0, 8, 0)));
+    }
+
+    static long lsb(String uuid) {
+        return hex(uuid, 24, 36, hex(uuid, 19, 23, 0));
+    }
+
+    private static long hex(String s, int from, int to, long value) {
+        for (int i = from; i < to; i++) {
+            value = (value << 4) | Character.digit(s.charAt(i), 16);
+        }
+        return value;
+    }
+
+    /**
+     * Bits are set under the store's lock and read without it; AtomicLongArray makes a bit
+     * set by a revoke visible to every check that starts after it.
+     */
+    private static final class BloomFilter {
+
+        private final AtomicLongArray words;
+        private final long bits;
+        private final int hashes;
+
+        BloomFilter(int expectedEntries, double falsePositiveRate) {
+            double ln2 = Math.log(2);
+            long optimalBits = (long) Math.ceil(-expectedEntries * Math.log(falsePositiveRate) / (ln2 * ln2));
+            this.words = new AtomicLongArray((int) Math.max(1, (optimalBits + 63) / 64));
+            this.bits = words.length() * 64L;
+            this.hashes = Math.max(1, (int) Math.round((double) bits / expectedEntries * ln2));
+        }
+
+        void put(long msb, long lsb) {
+            long h1 = mix(msb);
+            long h2 = mix(lsb) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                int word = (int) (bit >>> 6);
+                // writers hold the store's lock, so a plain read-modify-write is enough
+                words.set(word, words.get(word) | (1L << bit));
+            }
+        }
+
+        boolean mightContain(long msb, long lsb) {
+            long h1 = mix(msb);
+            long h2 = mix(lsb) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h1 + i * h2, bits);
+                if ((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
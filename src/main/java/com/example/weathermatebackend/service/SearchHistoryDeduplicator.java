@@ -0,0 +1,166 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.model.SearchHistory;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.util.*;
+
+/**
+ * Dedup mode for search history: a repeat search of the same city by the same user within
+ * weather.history.dedup.window.seconds does not add a row. Instead the newest matching row
+ * gets the new searchedAt and temperature and its hit_count goes up.
+ * Repeats inside one writer batch are merged in memory first; each remaining row is then a
+ * single update-or-insert statement, and the whole batch goes out as one JDBC batch.
+ * IDs for the insert branch are drawn up front and set on the incoming rows, so listeners
+ * see the ID a search was stored under.
+ * Two upserts of the same key must not overlap, or both can miss the update and insert:
+ * upsert is synchronized, and the history writer also serializes its flushes (its own drain
+ * thread and request threads under backpressure). The lock is per instance; instances
+ * sharing a database can still race, which at worst leaves two rows for one search window.
+ */
+@Component
+public class SearchHistoryDeduplicator {
+
+    // the matching row is found through idx_search_history_user_page: user, then a short searched_at range
+    private static final String UPSERT = """
+            with updated as (
+                update search_history
+                set searched_at = ?, temperature = ?, hit_count = hit_count + ?, city = ?, city_id = ?
+                where id = (
+                    select id from search_history
+                    where user_id = ? and searched_at >= ?
+                      and coalesce('id:' || city_id, lower(city)) = ?
+                    order by searched_at desc
+                    limit 1)
+                  and searched_at >= ?
+                returning id
+            )
+            insert into search_history (id, city, city_id, searched_at, temperature, user_id, hit_count)
+            select ?, ?, ?, ?, ?, ?, ?
+            where not exists (select 1 from updated)
+            """;
+
+    // an ID that ends up on the update branch is simply never used
+    private static final String NEXT_IDS = "select nextval('search_history_seq') from generate_series(1, ?)";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final boolean enabled;
+    private final Duration window;
+
+    private final Counter collapsed;
+
+    public SearchHistoryDeduplicator(JdbcTemplate jdbcTemplate,
+                                     @Value("${weather.history.dedup.enabled}") boolean enabled,
+                                     @Value("${weather.history.dedup.window.seconds}") long windowSeconds,
+                                     MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.enabled = enabled;
+        this.window = Duration.ofSeconds(windowSeconds);
+
+        this.collapsed = Counter.builder("weather.history.dedup.collapsed")
+                .description("Searches merged into another search of the same batch")
+                .register(meterRegistry);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public Duration getWindow() {
+        return window;
+    }
+
+    public synchronized void upsert(List<SearchHistory> batch) {
+        assignIds(batch);
+        List<SearchHistory> merged = mergeWithinBatch(batch);
+        collapsed.increment(batch.size() - merged.size());
+
+        jdbcTemplate.batchUpdate(UPSERT, new BatchPreparedStatementSetter() {
+            @Override
+            public void setValues(PreparedStatement ps, int i) throws SQLException {
+                SearchHistory history = merged.get(i);
+                Timestamp searchedAt = Timestamp.valueOf(history.getSearchedAt());
+                Timestamp windowStart = Timestamp.valueOf(history.getSearchedAt().minus(window));
+                Integer userId = history.getUserId();
+
+                ps.setTimestamp(1, searchedAt);
+                ps.setDouble(2, history.getTemperature());
+                ps.setInt(3, history.getHitCount());
+                ps.setString(4, history.getCity());
+                ps.setObject(5, history.getCityId(), Types.INTEGER);
+                ps.setObject(6, userId, Types.INTEGER);
+                ps.setTimestamp(7, windowStart);
+                ps.setString(8, history.cityKey());
+                ps.setTimestamp(9, windowStart);
+
+                ps.setLong(10, history.getId());
+                ps.setString(11, history.getCity());
+                ps.setObject(12, history.getCityId(), Types.INTEGER);
+                ps.setTimestamp(13, searchedAt);
+                ps.setDouble(14, history.getTemperature());
+                ps.setObject(15, userId, Types.INTEGER);
+                ps.setInt(16, history.getHitCount());
+            }
+
+            @Override
+            public int getBatchSize() {
+                return merged.size();
+            }
+        });
+    }
+
+    private void assignIds(List<SearchHistory> batch) {
+        List<Long> ids = jdbcTemplate.queryForList(NEXT_IDS, Long.class, batch.size());
+        for (int i = 0; i < batch.size(); i++) {
+            batch.get(i).setId(ids.get(i));
+        }
+    }
+
+    // folds repeats of a (user, city) that are within the window of the row they join
+    List<SearchHistory> mergeWithinBatch(List<SearchHistory> batch) {
+        List<SearchHistory> merged = new ArrayList<>(batch.size());
+        Map<String, SearchHistory> open = new HashMap<>();
+
+        for (SearchHistory history : batch) {
+            String key = history.getUserId() + "|" + history.cityKey();
+            SearchHistory current = open.get(key);
+            if (current != null && !history.getSearchedAt().isAfter(current.getSearchedAt().plus(window))) {
+                current.setHitCount(current.getHitCount() + history.getHitCount());
+                if (!history.getSearchedAt().isBefore(current.getSearchedAt())) {
+                    current.setSearchedAt(history.getSearchedAt());
+                    current.setTemperature(history.getTemperature());
+                    current.setCity(history.getCity());
+                }
+                continue;
+            }
+
+            SearchHistory copy = copyOf(history);
+            open.put(key, copy);
+            merged.add(copy);
+        }
+        return merged;
+    }
+
+    // listeners still get the rows as searched, so merge into copies
+    private static SearchHistory copyOf(SearchHistory history) {
+        SearchHistory copy = new SearchHistory();
+        copy.setId(history.getId());
+        copy.setCity(history.getCity());
+        copy.setCityId(history.getCityId());
+        copy.setSearchedAt(history.getSearchedAt());
+        copy.setTemperature(history.getTemperature());
+        copy.setHitCount(history.getHitCount());
+        copy.setUserId(history.getUserId());
+        return copy;
+    }
+}
@@ -0,0 +1,14 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.model.SearchHistory;
+
+import java.util.List;
+
+/**
+ * Called by {@link SearchHistoryWriter} on the writer thread after a batch has been saved.
+ * Implementations should be quick; a slow listener holds up the next batch.
+ */
+public interface SearchHistoryListener {
+
+    void onPersisted(List<SearchHistory> batch);
+}
@@ -0,0 +1,244 @@
+package com.example.weathermatebackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.YearMonth;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Keeps search_history range-partitioned by month and enforces raw-row retention.
+ * - On first start against a plain table, the table is converted in place: renamed away,
+ *   recreated as a partitioned table with one partition per month of existing data plus a
+ *   default partition, refilled and dropped. Rows without a timestamp get a placeholder
+ *   one before any partition's range, so they land in the default partition instead of
+ *   being lost; retention later rolls them up under that day.
+ * - Partitions are created ahead-months in advance so inserts never land in the default one.
+ * - Partitions older than raw-months are rolled up into search_history_daily (per user,
+ *   city key and day, the key the dedup upsert matches on) and then dropped, which is a
+ *   cheap catalog operation instead of a DELETE.
+ */
+@Component
+public class SearchHistoryPartitions {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchHistoryPartitions.class);
+
+    private static final String PARTITION_PREFIX = "search_history_p";
+    private static final DateTimeFormatter PARTITION_MONTH = DateTimeFormatter.ofPattern("yyyyMM");
+
+    // earlier than any real search, so no monthly partition covers it
+    static final LocalDateTime MISSING_TIMESTAMP = LocalDateTime.of(1970, 1, 1, 0, 0);
+
+    // partitions come from the catalog and match PARTITION_PREFIX + yyyyMM, so formatting them in is safe;
+    // rows are grouped on the same city key the dedup upsert matches on
+    private static final String ROLL_UP = """
+            insert into search_history_daily (user_id, city_key, city, city_id, search_day, searches,
+                    min_temperature, max_temperature, sum_temperature, last_searched_at)
+            select user_id, coalesce('id:' || city_id, lower(city)), max(city), max(city_id), cast(searched_at as date),
+                   sum(hit_count), min(temperature), max(temperature), sum(temperature * hit_count), max(searched_at)
+            from %s
+            group by user_id, coalesce('id:' || city_id, lower(city)), cast(searched_at as date)
+            on conflict (user_id, city_key, search_day) do update set
+                city = excluded.city,
+                searches = search_history_daily.searches + excluded.searches,
+                min_temperature = least(search_history_daily.min_temperature, excluded.min_temperature),
+                max_temperature = greatest(search_history_daily.max_temperature, excluded.max_temperature),
+                sum_temperature = search_history_daily.sum_temperature + excluded.sum_temperature,
+                last_searched_at = greatest(search_history_daily.last_searched_at, excluded.last_searched_at),
+                city_id = coalesce(search_history_daily.city_id, excluded.city_id)
+            """;
+
+    // daily rows from before city_key existed were keyed on the exact name; re-key and merge them
+    private static final String KEY_DAILY_ROWS = """
+            with unkeyed as (
+                delete from search_history_daily where city_key is null
+                returning user_id, city, city_id, search_day, searches,
+                          min_temperature, max_temperature, sum_temperature, last_searched_at
+            )
+            insert into search_history_daily (user_id, city_key, city, city_id, search_day, searches,
+                    min_temperature, max_temperature, sum_temperature, last_searched_at)
+            select user_id, coalesce('id:' || city_id, lower(city)), max(city), max(city_id), search_day, sum(searches),
+                   min(min_temperature), max(max_temperature), sum(sum_temperature), max(last_searched_at)
+            from unkeyed
+            group by user_id, coalesce('id:' || city_id, lower(city)), search_day
+            on conflict (user_id, city_key, search_day) do update set
+                searches = search_history_daily.searches + excluded.searches,
+                min_temperature = least(search_history_daily.min_temperature, excluded.min_temperature),
+                max_temperature = greatest(search_history_daily.max_temperature, excluded.max_temperature),
+                sum_temperature = search_history_daily.sum_temperature + excluded.sum_temperature,
+                last_searched_at = greatest(search_history_daily.last_searched_at, excluded.last_searched_at)
+            """;
+
+    // one name can now have a row per key (an ID'd and an unknown spelling), which the old key forbade
+    private static final String DROP_OLD_DAILY_KEY =
+            "alter table search_history_daily drop constraint if exists uk_search_history_daily_user_city_day";
+
+    private static final String LIST_PARTITIONS = """
+            select c.relname
+            from pg_inherits i
+            join pg_class c on c.oid = i.inhrelid
+            join pg_class p on p.oid = i.inhparent
+            where p.relname = 'search_history'
+            """;
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionOperations transactions;
+    private final RecentHistoryBuffer recentHistory;
+    private final int rawRetentionMonths;
+    private final int aheadMonths;
+
+    private final Counter rolledUpRows;
+
+    public SearchHistoryPartitions(JdbcTemplate jdbcTemplate, TransactionOperations transactions,
+                                   RecentHistoryBuffer recentHistory,
+                                   @Value("${weather.history.retention.raw-months}") int rawRetentionMonths,
+                                   @Value("${weather.history.partitions.ahead-months}") int aheadMonths,
+                                   MeterRegistry meterRegistry) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.transactions = transactions;
+        this.recentHistory = recentHistory;
+        this.rawRetentionMonths = rawRetentionMonths;
+        this.aheadMonths = aheadMonths;
+
+        this.rolledUpRows = Counter.builder("weather.history.rollup.rows")
+                .description("Daily aggregate rows written by the history roll-up")
+                .register(meterRegistry);
+    }
+
+    public void prepare() {
+        YearMonth now = YearMonth.now();
+        convertToPartitioned(now);
+        ensurePartitions(now);
+        keyDailyRows();
+    }
+
+    @Scheduled(cron = "${weather.history.retention.cron}")
+    public void maintain() {
+        YearMonth now = YearMonth.now();
+        try {
+            ensurePartitions(now);
+            rollUpExpired(now);
+        } catch (DataAccessException e) {
+            log.warn("Search history partition maintenance failed", e);
+        }
+    }
+
+    void convertToPartitioned(YearMonth now) {
+        String kind = jdbcTemplate.query("select relkind from pg_class where relname = 'search_history'",
+                rs -> rs.next() ? rs.getString(1) : null);
+        if (!"r".equals(kind)) {
+            // 'p' is already partitioned; null means Hibernate has not created it
+            return;
+        }
+
+        transactions.executeWithoutResult(status -> {
+            jdbcTemplate.execute("lock table search_history in access exclusive mode");
+            LocalDate oldest = jdbcTemplate.queryForObject(
+                    "select cast(min(searched_at) as date) from search_history", LocalDate.class);
+
+            jdbcTemplate.execute("alter table search_history rename to search_history_unpartitioned");
+            jdbcTemplate.execute("""
+                    create table search_history (like search_history_unpartitioned including defaults)
+                    partition by range (searched_at)
+                    """);
+            // the partition key has to be part of the primary key
+            jdbcTemplate.execute("alter table search_history add primary key (id, searched_at)");
+            jdbcTemplate.execute("alter table search_history add foreign key (user_id) references users (id)");
+            jdbcTemplate.execute("create table search_history_default partition of search_history default");
+
+            YearMonth first = oldest == null ? now : YearMonth.from(oldest);
+            for (YearMonth month = first; !month.isAfter(now.plusMonths(aheadMonths)); month = month.plusMonths(1)) {
+                jdbcTemplate.execute(createPartitionSql(month));
+            }
+
+            // the partition key cannot be null; the old table is dropped below, so patch it in place
+            int undated = jdbcTemplate.update(
+                    "update search_history_unpartitioned set searched_at = ? where searched_at is null", MISSING_TIMESTAMP);
+            if (undated > 0) {
+                log.warn("{} search history rows had no timestamp, moved to the default partition as {}",
+                        undated, MISSING_TIMESTAMP);
+            }
+            int moved = jdbcTemplate.update("insert into search_history select * from search_history_unpartitioned");
+            jdbcTemplate.execute("drop table search_history_unpartitioned");
+            log.info("Converted search_history to monthly partitions, moved {} rows", moved);
+        });
+    }
+
+    void keyDailyRows() {
+        transactions.executeWithoutResult(status -> {
+            jdbcTemplate.execute(DROP_OLD_DAILY_KEY);
+            int rows = jdbcTemplate.update(KEY_DAILY_ROWS);
+            if (rows > 0) {
+                log.info("Re-keyed search_history_daily into {} rows by city key", rows);
+            }
+        });
+    }
+
+    void ensurePartitions(YearMonth now) {
+        for (int i = 0; i <= aheadMonths; i++) {
+            YearMonth month = now.plusMonths(i);
+            try {
+                jdbcTemplate.execute(createPartitionSql(month));
+            } catch (DataAccessException e) {
+                // e.g. the default partition already holds rows for that month
+                log.warn("Could not create search history partition for {}", month, e);
+            }
+        }
+    }
+
+    void rollUpExpired(YearMonth now) {
+        YearMonth cutoff = now.minusMonths(rawRetentionMonths);
+        long rolledUp = 0;
+
+        for (String partition : jdbcTemplate.queryForList(LIST_PARTITIONS, String.class)) {
+            YearMonth month = partitionMonth(partition);
+            if (month != null && month.isBefore(cutoff)) {
+                Integer rows = transactions.execute(status -> {
+                    int written = jdbcTemplate.update(ROLL_UP.formatted(partition));
+                    jdbcTemplate.execute("drop table " + partition);
+                    return written;
+                });
+                rolledUp += rows == null ? 0 : rows;
+                log.info("Rolled up search history partition {} into {} daily rows", partition, rows);
+            }
+        }
+
+        // stragglers in the default partition are few, so a DELETE is fine there
+        String expiredDefaultRows = "with expired as (delete from search_history_default where searched_at < '%s' returning *) "
+                .formatted(cutoff.atDay(1));
+        Integer rows = transactions.execute(status -> jdbcTemplate.update(expiredDefaultRows + ROLL_UP.formatted("expired")));
+        rolledUp += rows == null ? 0 : rows;
+
+        rolledUpRows.increment(rolledUp);
+        if (rolledUp > 0) {
+            recentHistory.invalidateAll();
+        }
+    }
+
+    private static String createPartitionSql(YearMonth month) {
+        return "create table if not exists %s%s partition of search_history for values from ('%s') to ('%s')"
+                .formatted(PARTITION_PREFIX, PARTITION_MONTH.format(month), month.atDay(1), month.plusMonths(1).atDay(1));
+    }
+
+    static YearMonth partitionMonth(String partition) {
+        if (!partition.startsWith(PARTITION_PREFIX)) {
+            return null;
+        }
+        try {
+            return YearMonth.parse(partition.substring(PARTITION_PREFIX.length()), PARTITION_MONTH);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,221 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.model.SearchHistory;
+import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Write-behind pipeline for SearchHistory rows.
+ * Request threads only enqueue; a single background writer drains the bounded queue and
+ * saves rows with saveAll, flushing when batch-size rows are waiting or flush-interval has
+ * passed since the first one, whichever comes first. Hibernate turns each flush into
+ * batched JDBC inserts (sequence IDs, hibernate.jdbc.batch_size). Each saved batch is then
+ * handed to the registered {@link SearchHistoryListener}s. In dedup mode batches go through
+ * {@link SearchHistoryDeduplicator} instead, which folds repeat searches into counted rows.
+ * When the queue is full a caller waits up to enqueue-timeout and then writes its rows
+ * itself, so a slow database pushes back on request threads instead of losing rows.
+ * Flushes from the writer and from callers take turns: the dedup upsert of two rows of the
+ * same (user, city) must not race, and listeners must see batches in the order they were stored.
+ * On shutdown the writer stops after the web server and flushes whatever is left.
+ */
+@Component
+public class SearchHistoryWriter implements SmartLifecycle {
+
+    private static final Logger log = LoggerFactory.getLogger(SearchHistoryWriter.class);
+
+    // offered by stop() to wake a writer waiting on an empty queue; never written
+    private static final SearchHistory STOP = new SearchHistory();
+
+    private final SearchHistoryRepository historyRepository;
+    private final SearchHistoryDeduplicator deduplicator;
+    private final List<SearchHistoryListener> listeners;
+    private final BlockingQueue<SearchHistory> queue;
+    private final int batchSize;
+    private final long flushIntervalNanos;
+    private final long enqueueTimeoutMillis;
+
+    private final Counter written;
+    private final Counter dropped;
+    private final Counter writtenByCaller;
+    private final Timer flushTimer;
+
+    private final Object flushLock = new Object();
+
+    private volatile boolean running;
+    private Thread worker;
+
+    public SearchHistoryWriter(SearchHistoryRepository historyRepository, SearchHistoryDeduplicator deduplicator,
+                               List<SearchHistoryListener> listeners,
+                               @Value("${weather.history.queue-capacity}") int queueCapacity,
+                               @Value("${weather.history.batch-size}") int batchSize,
+                               @Value("${weather.history.flush-interval.millis}") long flushIntervalMillis,
+                               @Value("${weather.history.enqueue-timeout.millis}") long enqueueTimeoutMillis,
+                               MeterRegistry meterRegistry) {
+        this.historyRepository = historyRepository;
+        this.deduplicator = deduplicator;
+        this.listeners = listeners;
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.batchSize = batchSize;
+        this.flushIntervalNanos = TimeUnit.MILLISECONDS.toNanos(flushIntervalMillis);
+        this.enqueueTimeoutMillis = enqueueTimeoutMillis;
+
+        this.written = Counter.builder("weather.history.written").register(meterRegistry);
+        this.dropped = Counter.builder("weather.history.dropped")
+                .description("History rows lost because a batch insert failed")
+                .register(meterRegistry);
+        this.writtenByCaller = Counter.builder("weather.history.backpressure")
+                .description("History rows written on the request thread because the queue was full")
+                .register(meterRegistry);
+        this.flushTimer = Timer.builder("weather.history.flush").register(meterRegistry);
+        Gauge.builder("weather.history.queue.size", queue, BlockingQueue::size).register(meterRegistry);
+    }
+
+    public void enqueue(SearchHistory history) {
+        boolean queued;
+        try {
+            queued = queue.offer(history, enqueueTimeoutMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            queued = false;
+        }
+
+        if (!queued) {
+            // backpressure: the caller pays for its own insert
+            writtenByCaller.increment();
+            flush(List.of(history));
+        }
+    }
+
+    public void enqueueAll(List<SearchHistory> histories) {
+        for (SearchHistory history : histories) {
+            enqueue(history);
+        }
+    }
+
+    private void drainLoop() {
+        List<SearchHistory> batch = new ArrayList<>(batchSize);
+        while (running) {
+            try {
+                SearchHistory first = queue.poll(flushIntervalNanos, TimeUnit.NANOSECONDS);
+                if (first == null || first == STOP) {
+                    continue;
+                }
+                batch.add(first);
+
+                // fill the batch until it is full or the oldest row has waited flush-interval
+                long deadline = System.nanoTime() + flushIntervalNanos;
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || remaining <= 0) {
+                        break;
+                    }
+                    SearchHistory next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null || next == STOP) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+
+                batch.removeIf(history -> history == STOP);
+                flush(batch);
+                batch = new ArrayList<>(batchSize);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            }
+        }
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+    }
+
+    private void flush(List<SearchHistory> batch) {
+        synchronized (flushLock) {
+            write(batch);
+        }
+    }
+
+    private void write(List<SearchHistory> batch) {
+        long start = System.nanoTime();
+        try {
+            if (deduplicator.isEnabled()) {
+                deduplicator.upsert(batch);
+            } else {
+                historyRepository.saveAll(batch);
+            }
+            written.increment(batch.size());
+        } catch (RuntimeException e) {
+            dropped.increment(batch.size());
+            log.error("Failed to write {} search history rows", batch.size(), e);
+            return;
+        } finally {
+            flushTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+
+        for (SearchHistoryListener listener : listeners) {
+            try {
+                listener.onPersisted(batch);
+            } catch (RuntimeException e) {
+                log.warn("Search history listener {} failed", listener, e);
+            }
+        }
+    }
+
+    // flush everything still queued, used on shutdown
+    void drainRemaining() {
+        List<SearchHistory> batch = new ArrayList<>(batchSize);
+        while (queue.drainTo(batch, batchSize) > 0) {
+            batch.removeIf(history -> history == STOP);
+            flush(batch);
+            batch = new ArrayList<>(batchSize);
+        }
+    }
+
+    @Override
+    public void start() {
+        running = true;
+        worker = Thread.ofPlatform().name("history-writer").daemon().start(this::drainLoop);
+    }
+
+    @Override
+    public void stop() {
+        running = false;
+        if (worker != null) {
+            // a full queue means the writer is not waiting, so it sees running on its next turn
+            queue.offer(STOP);
+            try {
+                // the writer finishes its current batch, then exits
+                worker.join(TimeUnit.NANOSECONDS.toMillis(flushIntervalNanos) * 2 + 5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        drainRemaining();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    // stop after the web server (DEFAULT_PHASE - 2048) so no request enqueues after the final flush
+    @Override
+    public int getPhase() {
+        return SmartLifecycle.DEFAULT_PHASE - 4096;
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.weathermatebackend.service;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Local snapshot files shared by {@link WeatherCacheSnapshotter} and {@link RevokedTokenStore}.
+ * A file starts with an int magic and an int version (big-endian); the caller writes and
+ * reads everything after that. Writes go to a temp file in the same directory that is then
+ * moved over the old snapshot atomically, so a crash mid-write leaves the previous snapshot
+ * intact. Reads map the file read-only and report a short file as an IOException.
+ */
+final class SnapshotFile {
+
+    @FunctionalInterface
+    interface Writer {
+        // returns the number of entries written
+        int write(DataOutputStream out) throws IOException;
+    }
+
+    @FunctionalInterface
+    interface Reader {
+        // returns the number of entries restored
+        int read(ByteBuffer buffer) throws IOException;
+    }
+
+    private SnapshotFile() {
+    }
+
+    static int write(Path path, int magic, int version, Writer body) throws IOException {
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path tmp = Files.createTempFile(parent, path.getFileName().toString(), ".tmp");
+        try {
+            int count;
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeInt(magic);
+                out.writeInt(version);
+                count = body.write(out);
+            }
+            Files.move(tmp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return count;
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    // description names the snapshot in error messages, e.g. "weather cache snapshot"
+    static int read(Path path, int magic, int version, String description, Reader body) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (buffer.getInt() != magic || buffer.getInt() != version) {
+                    throw new IOException("Not a " + description + " (or an unsupported version)");
+                }
+                return body.read(buffer);
+            } catch (BufferUnderflowException e) {
+                throw new IOException("Truncated " + description, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.TrendingCityDto;
+import com.example.weathermatebackend.exception.InvalidRequestException;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Most searched cities across all users over the last hour or day, without querying history.
+ * Every successful lookup is counted in a sliding-window Count-Min Sketch per window: the
+ * window is split into buckets (5 minutes for the hour, 1 hour for the day), each bucket has
+ * its own sketch, and a running total sketch answers estimates; when a bucket falls out of
+ * the window it is subtracted from the total and reused. Estimates never undercount and
+ * overcount by at most e / width of the window's searches with probability 1 - e^-depth.
+ * The heaviest cities are tracked as candidates in a min-heap ordered by estimate, so
+ * memory stays constant whatever the number of distinct cities.
+ * Recording a search takes no lock: sketch cells are atomic counters, and a city that is
+ * already a candidate needs nothing more since reads refresh candidate estimates from the
+ * sketch. Each window's monitor is taken only to slide to the next bucket, to admit a new
+ * candidate that beats the weakest one, and for reads.
+ */
+@Component
+public class TrendingCities {
+
+    private final int maxTop;
+    private final EnumMap<Window, SlidingSketch> sketches = new EnumMap<>(Window.class);
+
+    public TrendingCities(@Value("${weather.trending.sketch.width}") int width,
+                          @Value("${weather.trending.sketch.depth}") int depth,
+                          @Value("${weather.trending.candidates}") int candidates,
+                          @Value("${weather.trending.max-top}") int maxTop) {
+        this.maxTop = maxTop;
+        for (Window window : Window.values()) {
+            sketches.put(window, new SlidingSketch(window, width, depth, Math.max(candidates, maxTop)));
+        }
+    }
+
+    public void record(CityIndex.CityRef city) {
+        record(city, System.currentTimeMillis());
+    }
+
+    void record(CityIndex.CityRef city, long nowMillis) {
+        long hash = hash(city.key());
+        for (SlidingSketch sketch : sketches.values()) {
+            sketch.add(city, hash, nowMillis);
+        }
+    }
+
+    public List<TrendingCityDto> getTrending(Window window, int top) {
+        if (top < 1) {
+            throw new InvalidRequestException("top must be at least 1");
+        }
+        return getTrending(window, Math.min(top, maxTop), System.currentTimeMillis());
+    }
+
+    List<TrendingCityDto> getTrending(Window window, int top, long nowMillis) {
+        List<TrendingCityDto> trending = new ArrayList<>(top);
+        for (Ranked ranked : sketches.get(window).top(top, nowMillis)) {
+            CityIndex.CityRef city = ranked.city();
+            trending.add(new TrendingCityDto(city.name(), city.isKnown() ? city.id() : null,
+                    city.country(), ranked.estimate()));
+        }
+        return trending;
+    }
+
+    // upstream queries for the hottest cities of the last hour, for the prefetcher
+    public List<String> hotQueries(int top) {
+        List<String> queries = new ArrayList<>(top);
+        for (Ranked ranked : sketches.get(Window.HOUR).top(top, System.currentTimeMillis())) {
+            queries.add(ranked.city().query());
+        }
+        return queries;
+    }
+
+    // FNV-1a; the two halves seed the row hashes (Kirsch-Mitzenmacher)
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < key.length(); i++) {
+            hash ^= key.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    public enum Window {
+        HOUR(Duration.ofHours(1), 12),
+        DAY(Duration.ofDays(1), 24);
+
+        private final long bucketMillis;
+        private final int buckets;
+
+        Window(Duration length, int buckets) {
+            this.bucketMillis = length.toMillis() / buckets;
+            this.buckets = buckets;
+        }
+
+        public static Window parse(String window) {
+            return switch (window.toLowerCase(Locale.ROOT)) {
+                case "hour", "1h" -> HOUR;
+                case "day", "24h" -> DAY;
+                default -> throw new InvalidRequestException("Unsupported trending window: " + window);
+            };
+        }
+    }
+
+    private static final class Candidate {
+
+        private final CityIndex.CityRef city;
+        private final long hash;
+        private long estimate;
+        private int position;
+
+        Candidate(CityIndex.CityRef city, long hash) {
+            this.city = city;
+            this.hash = hash;
+        }
+    }
+
+    private record Ranked(CityIndex.CityRef city, long estimate) {
+    }
+
+    private static final class SlidingSketch {
+
+        private final Window window;
+        private final int width;
+        private final int depth;
+        private final AtomicIntegerArray[] buckets;
+        private final AtomicLongArray total;
+        private volatile long currentBucket = Long.MIN_VALUE;
+
+        // min-heap on estimate, so the weakest candidate is the one to replace; guarded by this
+        private final Candidate[] heap;
+        private int size;
+        // read without the monitor by record's fast path
+        private final Map<String, Candidate> candidates = new ConcurrentHashMap<>();
+        // estimate a newcomer has to beat, as of the last heap change
+        private volatile long admissionThreshold;
+
+        SlidingSketch(Window window, int width, int depth, int maxCandidates) {
+            this.window = window;
+            this.width = width;
+            this.depth = depth;
+            this.buckets = new AtomicIntegerArray[window.buckets];
+            for (int i = 0; i < buckets.length; i++) {
+                buckets[i] = new AtomicIntegerArray(width * depth);
+            }
+            this.total = new AtomicLongArray(width * depth);
+            this.heap = new Candidate[maxCandidates];
+        }
+
+        void add(CityIndex.CityRef city, long hash, long nowMillis) {
+            if (Math.floorDiv(nowMillis, window.bucketMillis) > currentBucket) {
+                synchronized (this) {
+                    advance(nowMillis);
+                }
+            }
+            AtomicIntegerArray bucket = buckets[(int) Math.floorMod(currentBucket, (long) window.buckets)];
+            for (int row = 0; row < depth; row++) {
+                int cell = cell(hash, row);
+                bucket.incrementAndGet(cell);
+                total.incrementAndGet(cell);
+            }
+
+            if (candidates.containsKey(city.key())) {
+                return;
+            }
+            long estimate = estimate(hash);
+            if (estimate <= admissionThreshold) {
+                return;
+            }
+            synchronized (this) {
+                admit(city, hash, estimate);
+            }
+        }
+
+        // estimates are only written under the monitor, so they are copied out under it
+        synchronized List<Ranked> top(int n, long nowMillis) {
+            advance(nowMillis);
+            refresh();
+            List<Ranked> ranked = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                if (heap[i].estimate > 0) {
+                    ranked.add(new Ranked(heap[i].city, heap[i].estimate));
+                }
+            }
+            ranked.sort(Comparator.comparingLong(Ranked::estimate).reversed()
+                    .thenComparing(r -> r.city().key()));
+            return ranked.subList(0, Math.min(n, ranked.size()));
+        }
+
+        private void admit(CityIndex.CityRef city, long hash, long estimate) {
+            if (candidates.containsKey(city.key())) {
+                return;
+            }
+            Candidate candidate = new Candidate(city, hash);
+            candidate.estimate = estimate;
+            if (size < heap.length) {
+                candidates.put(city.key(), candidate);
+                heap[size] = candidate;
+                candidate.position = size++;
+                siftUp(candidate.position);
+                if (size == heap.length) {
+                    admissionThreshold = heap[0].estimate;
+                }
+                return;
+            }
+            // candidates' estimates have grown since the last refresh; compare with current ones
+            refresh();
+            if (estimate > heap[0].estimate) {
+                candidates.remove(heap[0].city.key());
+                candidates.put(city.key(), candidate);
+                heap[0] = candidate;
+                candidate.position = 0;
+                siftDown(0);
+            }
+            admissionThreshold = heap[0].estimate;
+        }
+
+        // re-reads every candidate's estimate from the sketch and restores the heap order
+        private void refresh() {
+            for (int i = 0; i < size; i++) {
+                heap[i].estimate = estimate(heap[i].hash);
+            }
+            for (int i = size / 2 - 1; i >= 0; i--) {
+                siftDown(i);
+            }
+            if (size == heap.length) {
+                admissionThreshold = heap[0].estimate;
+            }
+        }
+
+        // expires the buckets that slid out of the window since the last call
+        private void advance(long nowMillis) {
+            long bucket = Math.floorDiv(nowMillis, window.bucketMillis);
+            if (bucket <= currentBucket) {
+                return;
+            }
+            long expired = currentBucket == Long.MIN_VALUE ? 0 : Math.min(bucket - currentBucket, window.buckets);
+            for (long b = bucket - expired + 1; b <= bucket; b++) {
+                AtomicIntegerArray slot = buckets[(int) Math.floorMod(b, (long) window.buckets)];
+                for (int cell = 0; cell < slot.length(); cell++) {
+                    // a concurrent increment either lands before the swap and is subtracted
+                    // with it, or after and stays in both the slot and the total
+                    int count = slot.getAndSet(cell, 0);
+                    if (count != 0) {
+                        total.addAndGet(cell, -count);
+                    }
+                }
+            }
+            currentBucket = bucket;
+
+            if (expired > 0) {
+                // estimates went down; rebuild the heap around the new values
+                refresh();
+            }
+        }
+
+        private long estimate(long hash) {
+            long estimate = Long.MAX_VALUE;
+            for (int row = 0; row < depth; row++) {
+                estimate = Math.min(estimate, total.get(cell(hash, row)));
+            }
+            return estimate;
+        }
+
+        private int cell(long hash, int row) {
+            int h1 = (int) hash;
+            int h2 = (int) (hash >>> 32) | 1;
+            return row * width + Math.floorMod(h1 + row * h2, width);
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (heap[parent].estimate <= heap[i].estimate) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int smallest = i;
+                int left = 2 * i + 1;
+                int right = left + 1;
+                if (left < size && heap[left].estimate < heap[smallest].estimate) {
+                    smallest = left;
+                }
+                if (right < size && heap[right].estimate < heap[smallest].estimate) {
+                    smallest = right;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            Candidate first = heap[a];
+            heap[a] = heap[b];
+            heap[b] = first;
+            heap[a].position = a;
+            heap[b].position = b;
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package com.example.weathermatebackend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide token bucket for the shared OpenWeatherMap API key.
+ * Implemented as a generic cell rate algorithm: a single AtomicLong holds the time at
+ * which the bucket will be full again, and each call advances it by one token's worth
+ * of time with a CAS, so acquiring never blocks or takes a lock.
+ * Interactive requests may drain the whole bucket; background traffic (stale refreshes,
+ * prefetch) stops once only the reserved share of tokens is left, so users always
+ * outrank it. Remaining tokens are exported as weather.quota.remaining.
+ */
+@Component
+public class UpstreamQuotaGovernor {
+
+    public enum Lane { INTERACTIVE, BACKGROUND }
+
+    private final long tokenNanos;
+    private final long interactiveLimitNanos;
+    private final long backgroundLimitNanos;
+
+    // "theoretical arrival time": when the bucket would be full again
+    private final AtomicLong fullAt;
+
+    private final Counter interactiveRejections;
+    private final Counter backgroundRejections;
+
+    public UpstreamQuotaGovernor(@Value("${weather.quota.per-minute}") int perMinute,
+                                 @Value("${weather.quota.burst}") int burst,
+                                 @Value("${weather.quota.background-reserve}") double backgroundReserve,
+                                 MeterRegistry meterRegistry) {
+        this.tokenNanos = TimeUnit.MINUTES.toNanos(1) / perMinute;
+        this.interactiveLimitNanos = tokenNanos * burst;
+        this.backgroundLimitNanos = (long) (tokenNanos * burst * (1 - backgroundReserve));
+        this.fullAt = new AtomicLong(System.nanoTime());
+
+        this.interactiveRejections = Counter.builder("weather.quota.rejected")
+                .tag("lane", "interactive")
+                .register(meterRegistry);
+        this.backgroundRejections = Counter.builder("weather.quota.rejected")
+                .tag("lane", "background")
+                .register(meterRegistry);
+        Gauge.builder("weather.quota.remaining", this, UpstreamQuotaGovernor::remainingTokens)
+                .description("Upstream calls that can be made right now without exceeding the quota")
+                .register(meterRegistry);
+        Gauge.builder("weather.quota.remaining.background", this, UpstreamQuotaGovernor::remainingBackgroundTokens)
+                .register(meterRegistry);
+    }
+
+    public boolean tryAcquire(Lane lane) {
+        long limit = lane == Lane.INTERACTIVE ? interactiveLimitNanos : backgroundLimitNanos;
+        while (true) {
+            long now = System.nanoTime();
+            long current = fullAt.get();
+            long next = Math.max(current, now) + tokenNanos;
+            if (next - now > limit) {
+                (lane == Lane.INTERACTIVE ? interactiveRejections : backgroundRejections).increment();
+                return false;
+            }
+            if (fullAt.compareAndSet(current, next)) {
+                return true;
+            }
+        }
+    }
+
+    // gives back a token whose call never went out
+    public void refund() {
+        // a fullAt in the past just means a full bucket, so no lower bound is needed
+        fullAt.addAndGet(-tokenNanos);
+    }
+
+    public long remainingTokens() {
+        return remaining(interactiveLimitNanos);
+    }
+
+    public long remainingBackgroundTokens() {
+        return remaining(backgroundLimitNanos);
+    }
+
+    private long remaining(long limit) {
+        long backlog = Math.max(0, fullAt.get() - System.nanoTime());
+        return Math.max(0, (limit - backlog) / tokenNanos);
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.model.User;
+import jakarta.persistence.PostRemove;
+import jakarta.persistence.PostUpdate;
+import org.springframework.beans.factory.ObjectProvider;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * JPA callbacks on {@link User}: an updated or deleted user drops out of {@link PrincipalCache},
+ * so the next request sees the change. Hibernate obtains this listener from Spring.
+ * The callbacks fire at flush, before the transaction commits; evicting then would let a
+ * concurrent request reload the old row into the cache, so eviction waits for the commit.
+ * A rolled-back change leaves the cache alone.
+ */
+@Component
+public class UserChangeListener {
+
+    // looked up lazily: the cache depends on repositories that are built with the entity manager
+    private final ObjectProvider<PrincipalCache> principalCache;
+
+    public UserChangeListener(ObjectProvider<PrincipalCache> principalCache) {
+        this.principalCache = principalCache;
+    }
+
+    @PostUpdate
+    @PostRemove
+    public void onChange(User user) {
+        int userId = user.getId();
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            // no Spring transaction to wait for
+            evict(userId);
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+            @Override
+            public void afterCommit() {
+                evict(userId);
+            }
+        });
+    }
+
+    private void evict(int userId) {
+        principalCache.ifAvailable(cache -> cache.invalidate(userId));
+    }
+}
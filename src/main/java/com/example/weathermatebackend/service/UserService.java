@@ -4,7 +4,9 @@ import com.example.weathermatebackend.dto.AuthResponseDto;
 import com.example.weathermatebackend.dto.UserRegistrationDto;
 import com.example.weathermatebackend.exception.UsernameAlreadyExistsException;
 import com.example.weathermatebackend.model.User;
+import com.example.weathermatebackend.model.UserPrinciple;
 import com.example.weathermatebackend.repository.UserRepository;
+import io.jsonwebtoken.Claims;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Value;
@@ -12,7 +14,7 @@ import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.stereotype.Service;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
-import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
 
 @Service
 public class UserService {
@@ -27,12 +29,18 @@ public class UserService {
     final AuthenticationManager authManager;
     final JwtService jwtService;
 
-    private final BCryptPasswordEncoder encoder = new BCryptPasswordEncoder();
+    private final PasswordEncoder encoder;
+    private final PrincipalCache principalCache;
+    private final RevokedTokenStore revokedTokens;
 
-    public UserService(UserRepository userRepository, AuthenticationManager authManager, JwtService jwtService) {
+    public UserService(UserRepository userRepository, AuthenticationManager authManager, JwtService jwtService,
+                       PasswordEncoder encoder, PrincipalCache principalCache, RevokedTokenStore revokedTokens) {
         this.userRepository = userRepository;
         this.authManager = authManager;
         this.jwtService = jwtService;
+        this.encoder = encoder;
+        this.principalCache = principalCache;
+        this.revokedTokens = revokedTokens;
     }
 
     public User register(UserRegistrationDto dto){
@@ -57,17 +65,11 @@ public class UserService {
                 new UsernamePasswordAuthenticationToken(user.getUsername(), user.getPassword()));
 
         if(authentication.isAuthenticated()) {
-            String accessToken = jwtService.generateAccessToken(user.getUsername());
-            String refreshToken = jwtService.generateRefreshToken(user.getUsername());
-
-            // THIS is where the cookie is created and sent to the browser
-            Cookie cookie = new Cookie(refreshTokenCookieName, refreshToken);
-            cookie.setHttpOnly(true);       // JS cannot access it
-            cookie.setSecure(true);         // HTTPS only
-            cookie.setPath("/");            // available for all endpoints
-            cookie.setAttribute("SameSite", "None");
-            cookie.setMaxAge((int) refreshTokenExpirationSeconds); // 7 days
-            response.addCookie(cookie);     //  browser saves it automatically
+            UserPrinciple principal = (UserPrinciple) authentication.getPrincipal();
+            String accessToken = jwtService.generateAccessToken(principal.getUserId(), principal.getUsername());
+            String refreshToken = jwtService.generateRefreshToken(principal.getUserId(), principal.getUsername());
+
+            addRefreshCookie(response, refreshToken);
 
             return new AuthResponseDto(accessToken, "Login successful");
         }
@@ -75,4 +77,39 @@ public class UserService {
         return new AuthResponseDto(null, "Authentication failed");
     }
 
+    /**
+     * Trades a refresh token for a new access token and a new refresh token (rotation).
+     * The presented token is revoked on the way, so replaying it, e.g. after it was stolen,
+     * fails. Returns null when the token is invalid, already used or logged out, or its
+     * user no longer exists.
+     */
+    public AuthResponseDto refresh(String refreshToken, HttpServletResponse response) {
+        Claims claims = jwtService.verify(refreshToken);
+        // access tokens are not accepted here, nor refresh tokens issued before rotation (no jti)
+        if (claims == null || !JwtService.isRefreshToken(claims) || claims.getId() == null
+                || revokedTokens.isRevoked(claims.getId())) {
+            return null;
+        }
+        // also rejects tokens of users that were deleted or renamed
+        UserPrinciple principal = principalCache.resolve(claims);
+        // of two concurrent refreshes with the same token only one gets to revoke it
+        if (principal == null || !revokedTokens.revoke(claims.getId(), claims.getExpiration().getTime())) {
+            return null;
+        }
+
+        String accessToken = jwtService.generateAccessToken(principal.getUserId(), principal.getUsername());
+        addRefreshCookie(response, jwtService.generateRefreshToken(principal.getUserId(), principal.getUsername()));
+        return new AuthResponseDto(accessToken, "Token refreshed");
+    }
+
+    private void addRefreshCookie(HttpServletResponse response, String refreshToken) {
+        // THIS is where the cookie is created and sent to the browser
+        Cookie cookie = new Cookie(refreshTokenCookieName, refreshToken);
+        cookie.setHttpOnly(true);       // JS cannot access it
+        cookie.setSecure(true);         // HTTPS only
+        cookie.setPath("/");            // available for all endpoints
+        cookie.setAttribute("SameSite", "None");
+        cookie.setMaxAge((int) refreshTokenExpirationSeconds); // 7 days
+        response.addCookie(cookie);     //  browser saves it automatically
+    }
 }
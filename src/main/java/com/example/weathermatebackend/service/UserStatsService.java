@@ -0,0 +1,349 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.CityStatsDto;
+import com.example.weathermatebackend.dto.UserStatsDto;
+import com.example.weathermatebackend.exception.InvalidRequestException;
+import com.example.weathermatebackend.model.SearchHistory;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.LoadingCache;
+import com.github.benmanes.caffeine.cache.RemovalCause;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.sql.Timestamp;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+
+/**
+ * Per-user search stats ("your most searched cities"), maintained incrementally.
+ * Every saved history batch is folded into in-memory aggregates per user and city; each
+ * user's cities are also kept in a set ordered by search count, so reading the top k is
+ * O(k) and never touches search_history. Aggregates live in a size-bounded cache, are loaded
+ * from user_city_stats on first use, and what changed since the last write is upserted back
+ * every flush interval, on eviction and on shutdown. The upsert adds those deltas to the
+ * stored row rather than overwriting it, so several instances, or a copy loaded before
+ * another instance flushed, never undo each other's counts; an instance's in-memory view
+ * only misses what others recorded after it was loaded.
+ * Searches are recorded inside computeIfPresent for the user, retried if the entry was
+ * evicted after it was looked up, so an eviction cannot lose a search. An evicted user's
+ * aggregates are parked as pending and written by the removal listener, after the cache has
+ * let go of the entry; a reload meanwhile takes the pending aggregates back instead of
+ * reading a stale row.
+ */
+@Service
+public class UserStatsService implements SearchHistoryListener {
+
+    private static final Logger log = LoggerFactory.getLogger(UserStatsService.class);
+
+    private static final String LOAD = """
+            select city_key, city, city_id, searches, min_temperature, max_temperature, sum_temperature, last_searched_at
+            from user_city_stats
+            where user_id = ?
+            """;
+
+    private static final String UPSERT = """
+            insert into user_city_stats (user_id, city_key, city, city_id, searches,
+                    min_temperature, max_temperature, sum_temperature, last_searched_at)
+            values (?, ?, ?, ?, ?, ?, ?, ?, ?)
+            on conflict (user_id, city_key) do update set
+                city = excluded.city,
+                city_id = coalesce(excluded.city_id, user_city_stats.city_id),
+                searches = user_city_stats.searches + excluded.searches,
+                min_temperature = least(user_city_stats.min_temperature, excluded.min_temperature),
+                max_temperature = greatest(user_city_stats.max_temperature, excluded.max_temperature),
+                sum_temperature = user_city_stats.sum_temperature + excluded.sum_temperature,
+                last_searched_at = greatest(user_city_stats.last_searched_at, excluded.last_searched_at)
+            """;
+
+    // one-off seed from both history tiers when the stats table is first introduced
+    private static final String BACKFILL = """
+            insert into user_city_stats (user_id, city_key, city, city_id, searches,
+                    min_temperature, max_temperature, sum_temperature, last_searched_at)
+            select user_id, city_key, max(city), max(city_id), sum(searches),
+                   min(min_temperature), max(max_temperature), sum(sum_temperature), max(last_searched_at)
+            from (
+                select user_id, coalesce('id:' || city_id, lower(city)) as city_key, city, city_id, sum(hit_count) as searches,
+                       min(temperature) as min_temperature, max(temperature) as max_temperature,
+                       sum(temperature * hit_count) as sum_temperature, max(searched_at) as last_searched_at
+                from search_history
+                where user_id is not null and city is not null
+                group by user_id, city, city_id
+                union all
+                select user_id, coalesce('id:' || city_id, lower(city)), city, city_id, sum(searches),
+                       min(min_temperature), max(max_temperature), sum(sum_temperature), max(last_searched_at)
+                from search_history_daily
+                where user_id is not null and city is not null
+                group by user_id, city, city_id
+            ) tiers
+            group by user_id, city_key
+            """;
+
+    private static final Comparator<CityStats> BY_SEARCHES = Comparator
+            .comparingLong((CityStats c) -> c.searches).reversed()
+            .thenComparing(c -> c.key);
+
+    private final JdbcTemplate jdbcTemplate;
+    private final int maxTop;
+    private final LoadingCache<Integer, UserStats> stats;
+
+    // evicted aggregates whose changes may not be written yet
+    private final Map<Integer, UserStats> pending = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UserStatsService(JdbcTemplate jdbcTemplate,
+                            @Value("${weather.stats.max-users}") long maxUsers,
+                            @Value("${weather.stats.max-top}") int maxTop) {
+        this(jdbcTemplate, maxUsers, maxTop, ForkJoinPool.commonPool());
+    }
+
+    UserStatsService(JdbcTemplate jdbcTemplate, long maxUsers, int maxTop, Executor executor) {
+        this.jdbcTemplate = jdbcTemplate;
+        this.maxTop = maxTop;
+        this.stats = Caffeine.newBuilder()
+                .maximumSize(maxUsers)
+                .executor(executor)
+                // runs atomically with the eviction, so a reload finds the aggregates before the write
+                .evictionListener((Integer userId, UserStats userStats, RemovalCause cause) -> {
+                    if (userId != null && userStats != null) {
+                        pending.put(userId, userStats);
+                    }
+                })
+                // runs on the executor once the entry is gone, so the write holds no cache lock
+                .removalListener((Integer userId, UserStats userStats, RemovalCause cause) -> {
+                    if (cause.wasEvicted() && userId != null && userStats != null) {
+                        // a failed write stays pending for the next flush or reload
+                        if (persist(userId, userStats)) {
+                            pending.remove(userId, userStats);
+                        }
+                    }
+                })
+                .build(this::load);
+    }
+
+    @Override
+    public void onPersisted(List<SearchHistory> batch) {
+        for (SearchHistory history : batch) {
+            if (history.getUserId() == null || history.getSearchedAt() == null) {
+                continue;
+            }
+            // a cold user is loaded through the cache loader first, so the compute below only
+            // records; if the entry is evicted in between, the next get takes it back from pending
+            UserStats recorded;
+            do {
+                stats.get(history.getUserId());
+                recorded = stats.asMap().computeIfPresent(history.getUserId(), (userId, userStats) -> {
+                    userStats.record(history);
+                    return userStats;
+                });
+            } while (recorded == null);
+        }
+    }
+
+    public UserStatsDto getStats(int userId, int top) {
+        if (top < 1) {
+            throw new InvalidRequestException("top must be at least 1");
+        }
+        return stats.get(userId).snapshot(Math.min(top, maxTop));
+    }
+
+    @Scheduled(fixedDelayString = "${weather.stats.flush.interval.millis}",
+            initialDelayString = "${weather.stats.flush.interval.millis}")
+    public void flush() {
+        pending.forEach((userId, userStats) -> {
+            if (persist(userId, userStats)) {
+                pending.remove(userId, userStats);
+            }
+        });
+        stats.asMap().forEach(this::persist);
+    }
+
+    @PreDestroy
+    public void flushOnShutdown() {
+        flush();
+    }
+
+    public void backfillIfEmpty() {
+        Boolean empty = jdbcTemplate.queryForObject(
+                "select not exists (select 1 from user_city_stats)", Boolean.class);
+        if (Boolean.TRUE.equals(empty)) {
+            int rows = jdbcTemplate.update(BACKFILL);
+            log.info("Seeded user_city_stats with {} rows from search history", rows);
+        }
+    }
+
+    private UserStats load(Integer userId) {
+        UserStats evicted = pending.remove(userId);
+        if (evicted != null) {
+            // its removal listener may not have written it yet; the unsaved deltas carry over
+            return evicted;
+        }
+        UserStats userStats = new UserStats();
+        jdbcTemplate.query(LOAD, rs -> {
+            CityStats city = new CityStats(rs.getString("city_key"));
+            city.city = rs.getString("city");
+            city.cityId = (Integer) rs.getObject("city_id");
+            city.searches = rs.getLong("searches");
+            city.minTemperature = rs.getDouble("min_temperature");
+            city.maxTemperature = rs.getDouble("max_temperature");
+            city.sumTemperature = rs.getDouble("sum_temperature");
+            Timestamp last = rs.getTimestamp("last_searched_at");
+            city.lastSearchedAt = last == null ? null : last.toLocalDateTime();
+            userStats.add(city);
+        }, userId);
+        return userStats;
+    }
+
+    private boolean persist(int userId, UserStats userStats) {
+        List<Object[]> rows = userStats.takeDirty(userId);
+        if (rows.isEmpty()) {
+            return true;
+        }
+        try {
+            jdbcTemplate.batchUpdate(UPSERT, rows);
+            return true;
+        } catch (DataAccessException e) {
+            userStats.markDirty(rows);
+            log.warn("Could not persist stats for user {}", userId, e);
+            return false;
+        }
+    }
+
+    // all access goes through the UserStats monitor
+    private static final class UserStats {
+
+        private final Map<String, CityStats> byCity = new HashMap<>();
+        private final TreeSet<CityStats> ranking = new TreeSet<>(BY_SEARCHES);
+        private long totalSearches;
+
+        synchronized void add(CityStats city) {
+            byCity.put(city.key, city);
+            ranking.add(city);
+            totalSearches += city.searches;
+        }
+
+        synchronized void record(SearchHistory history) {
+            String key = history.cityKey();
+            CityStats city = byCity.computeIfAbsent(key, CityStats::new);
+
+            // re-insert so the ordered set sees the new count
+            ranking.remove(city);
+            city.record(history);
+            ranking.add(city);
+            totalSearches += history.getHitCount();
+        }
+
+        synchronized UserStatsDto snapshot(int top) {
+            List<CityStatsDto> topCities = new ArrayList<>(Math.min(top, ranking.size()));
+            for (CityStats city : ranking) {
+                if (topCities.size() == top) {
+                    break;
+                }
+                topCities.add(city.toDto());
+            }
+            return new UserStatsDto(totalSearches, byCity.size(), topCities);
+        }
+
+        // one row per changed city holding only what was recorded since the last call
+        synchronized List<Object[]> takeDirty(int userId) {
+            List<Object[]> rows = new ArrayList<>();
+            for (CityStats city : byCity.values()) {
+                if (city.unsaved != null) {
+                    Delta delta = city.unsaved;
+                    city.unsaved = null;
+                    rows.add(new Object[]{userId, city.key, city.city, city.cityId, delta.searches,
+                            delta.minTemperature, delta.maxTemperature, delta.sumTemperature,
+                            delta.lastSearchedAt == null ? null : Timestamp.valueOf(delta.lastSearchedAt)});
+                }
+            }
+            return rows;
+        }
+
+        // the write failed: fold its deltas back in, next to anything recorded meanwhile
+        synchronized void markDirty(List<Object[]> rows) {
+            for (Object[] row : rows) {
+                CityStats city = byCity.get((String) row[1]);
+                if (city != null) {
+                    Timestamp last = (Timestamp) row[8];
+                    city.unsaved().add((Long) row[4], (Double) row[5], (Double) row[6], (Double) row[7],
+                            last == null ? null : last.toLocalDateTime());
+                }
+            }
+        }
+    }
+
+    private static final class CityStats {
+
+        private final String key;
+        private String city;
+        private Integer cityId;
+        private long searches;
+        private double minTemperature = Double.POSITIVE_INFINITY;
+        private double maxTemperature = Double.NEGATIVE_INFINITY;
+        private double sumTemperature;
+        private LocalDateTime lastSearchedAt;
+        // null while nothing is waiting to be written
+        private Delta unsaved;
+
+        CityStats(String key) {
+            this.key = key;
+        }
+
+        void record(SearchHistory history) {
+            double temperature = history.getTemperature();
+            int hits = history.getHitCount();
+            city = history.getCity();
+            cityId = history.getCityId();
+            searches += hits;
+            minTemperature = Math.min(minTemperature, temperature);
+            maxTemperature = Math.max(maxTemperature, temperature);
+            sumTemperature += temperature * hits;
+            if (lastSearchedAt == null || history.getSearchedAt().isAfter(lastSearchedAt)) {
+                lastSearchedAt = history.getSearchedAt();
+            }
+            unsaved().add(hits, temperature, temperature, temperature * hits, history.getSearchedAt());
+        }
+
+        Delta unsaved() {
+            if (unsaved == null) {
+                unsaved = new Delta();
+            }
+            return unsaved;
+        }
+
+        CityStatsDto toDto() {
+            return new CityStatsDto(city, cityId, searches, searches == 0 ? 0 : sumTemperature / searches,
+                    minTemperature, maxTemperature, lastSearchedAt);
+        }
+    }
+
+    // what a city gained since its row was last written
+    private static final class Delta {
+
+        private long searches;
+        private double minTemperature = Double.POSITIVE_INFINITY;
+        private double maxTemperature = Double.NEGATIVE_INFINITY;
+        private double sumTemperature;
+        private LocalDateTime lastSearchedAt;
+
+        void add(long searches, double minTemperature, double maxTemperature, double sumTemperature,
+                 LocalDateTime lastSearchedAt) {
+            this.searches += searches;
+            this.minTemperature = Math.min(this.minTemperature, minTemperature);
+            this.maxTemperature = Math.max(this.maxTemperature, maxTemperature);
+            this.sumTemperature += sumTemperature;
+            if (this.lastSearchedAt == null || (lastSearchedAt != null && lastSearchedAt.isAfter(this.lastSearchedAt))) {
+                this.lastSearchedAt = lastSearchedAt;
+            }
+        }
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.WeatherDto;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import com.github.benmanes.caffeine.cache.Expiry;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.CaffeineCacheMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * In-process cache of upstream weather responses, keyed by {@link CityIndex.CityRef#key()}.
+ * Bounded by size; Caffeine's W-TinyLFU policy keeps frequently requested cities
+ * resident and evicts one-off lookups first.
+ * Entries outlive their TTL by a stale grace window so callers can serve the last
+ * response while a refresh runs in the background (stale-while-revalidate).
+ * Hit/miss/eviction counters are published as "cache.*" meters tagged cache=weather.
+ */
+@Component
+public class WeatherCache {
+
+    private final Cache<String, Entry> cache;
+    private final Duration ttl;
+    private final Duration retention;
+
+    public WeatherCache(@Value("${weather.cache.max-size}") long maxSize,
+                        @Value("${weather.cache.ttl.seconds}") long ttlSeconds,
+                        @Value("${weather.cache.stale-grace.seconds}") long staleGraceSeconds,
+                        MeterRegistry meterRegistry) {
+        this.ttl = Duration.ofSeconds(ttlSeconds);
+        this.retention = ttl.plusSeconds(staleGraceSeconds);
+        this.cache = Caffeine.newBuilder()
+                .maximumSize(maxSize)
+                // expire relative to fetchedAt, so entries restored from a snapshot keep their real age
+                .expireAfter(Expiry.writing((String key, Entry entry) -> remainingLife(entry)))
+                .recordStats()
+                .build();
+        CaffeineCacheMetrics.monitor(meterRegistry, cache, "weather");
+    }
+
+    public Entry get(String key) {
+        return cache.getIfPresent(key);
+    }
+
+    public void put(String key, WeatherDto weather) {
+        cache.put(key, new Entry(weather, Instant.now()));
+    }
+
+    /**
+     * Re-inserts an entry loaded from a snapshot with its original fetch time.
+     * Ignored when the entry is already past the stale grace window or the key was
+     * fetched again in the meantime.
+     */
+    public void restore(String key, Entry entry) {
+        if (remainingLife(entry).isPositive()) {
+            cache.asMap().putIfAbsent(key, entry);
+        }
+    }
+
+    // read-only view for snapshotting
+    public Map<String, Entry> entries() {
+        return Collections.unmodifiableMap(cache.asMap());
+    }
+
+    public Duration getRetention() {
+        return retention;
+    }
+
+    private Duration remainingLife(Entry entry) {
+        Duration remaining = Duration.between(Instant.now(), entry.fetchedAt().plus(retention));
+        return remaining.isNegative() ? Duration.ZERO : remaining;
+    }
+
+    public boolean isFresh(Entry entry) {
+        return entry.fetchedAt().plus(ttl).isAfter(Instant.now());
+    }
+
+    public boolean expiresWithin(Entry entry, Duration window) {
+        return !entry.fetchedAt().plus(ttl).isAfter(Instant.now().plus(window));
+    }
+
+    public long size() {
+        return cache.estimatedSize();
+    }
+
+    /**
+     * A cached upstream response and the moment it was fetched.
+     */
+    public record Entry(WeatherDto weather, Instant fetchedAt) {
+
+        public long ageSeconds() {
+            return Math.max(0, Duration.between(fetchedAt, Instant.now()).toSeconds());
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.WeatherDto;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * Persists the weather cache to local disk so a restarted instance starts warm.
+ * The snapshot is written on shutdown and every snapshot interval, and loaded once at
+ * startup through a memory-mapped read; entries already past the stale grace window
+ * are dropped on load.
+ *
+ * File layout (big-endian):
+ *   int magic, int version, int count, then per entry:
+ *   short keyLength, byte[] key (UTF-8), long fetchedAtMillis, byte flags,
+ *   [double temp, double feelsLike, int humidity] if flags has MAIN,
+ *   [double windSpeed] if flags has WIND
+ */
+@Component
+public class WeatherCacheSnapshotter {
+
+    private static final Logger log = LoggerFactory.getLogger(WeatherCacheSnapshotter.class);
+
+    private static final int MAGIC = 0x574D4353; // "WMCS"
+    private static final int VERSION = 1;
+    private static final byte HAS_MAIN = 1;
+    private static final byte HAS_WIND = 2;
+
+    private final WeatherCache weatherCache;
+    private final boolean enabled;
+    private final Path path;
+
+    public WeatherCacheSnapshotter(WeatherCache weatherCache,
+                                   @Value("${weather.cache.snapshot.enabled}") boolean enabled,
+                                   @Value("${weather.cache.snapshot.path}") Path path) {
+        this.weatherCache = weatherCache;
+        this.enabled = enabled;
+        this.path = path;
+    }
+
+    @PostConstruct
+    public void restore() {
+        if (!enabled || !Files.isRegularFile(path)) {
+            return;
+        }
+        try {
+            int restored = load();
+            log.info("Restored {} weather cache entries from {}", restored, path);
+        } catch (IOException | RuntimeException e) {
+            // a bad snapshot only costs us a cold start
+            log.warn("Ignoring unreadable weather cache snapshot {}", path, e);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${weather.cache.snapshot.interval.millis}",
+            initialDelayString = "${weather.cache.snapshot.interval.millis}")
+    public void snapshot() {
+        if (!enabled) {
+            return;
+        }
+        try {
+            int written = save();
+            log.debug("Wrote {} weather cache entries to {}", written, path);
+        } catch (IOException e) {
+            log.warn("Could not write weather cache snapshot {}", path, e);
+        }
+    }
+
+    @PreDestroy
+    public void snapshotOnShutdown() {
+        snapshot();
+    }
+
+    int save() throws IOException {
+        // keys are written with a short length prefix
+        Map<String, WeatherCache.Entry> entries = weatherCache.entries().entrySet().stream()
+                .filter(entry -> entry.getKey().getBytes(StandardCharsets.UTF_8).length <= 0xFFFF)
+                .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+        return SnapshotFile.write(path, MAGIC, VERSION, out -> {
+            out.writeInt(entries.size());
+            for (Map.Entry<String, WeatherCache.Entry> entry : entries.entrySet()) {
+                writeEntry(out, entry.getKey(), entry.getValue());
+            }
+            return entries.size();
+        });
+    }
+
+    private static void writeEntry(DataOutputStream out, String key, WeatherCache.Entry entry) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        WeatherDto weather = entry.weather();
+        byte flags = (byte) ((weather.getMain() != null ? HAS_MAIN : 0) | (weather.getWind() != null ? HAS_WIND : 0));
+
+        out.writeShort(keyBytes.length);
+        out.write(keyBytes);
+        out.writeLong(entry.fetchedAt().toEpochMilli());
+        out.writeByte(flags);
+        if (weather.getMain() != null) {
+            out.writeDouble(weather.getMain().getTemp());
+            out.writeDouble(weather.getMain().getFeels_like());
+            out.writeInt(weather.getMain().getHumidity());
+        }
+        if (weather.getWind() != null) {
+            out.writeDouble(weather.getWind().getSpeed());
+        }
+    }
+
+    int load() throws IOException {
+        return SnapshotFile.read(path, MAGIC, VERSION, "weather cache snapshot", buffer -> {
+            int count = buffer.getInt();
+            int restored = 0;
+            Instant oldestUsable = Instant.now().minus(weatherCache.getRetention());
+            for (int i = 0; i < count; i++) {
+                byte[] keyBytes = new byte[buffer.getShort() & 0xFFFF];
+                buffer.get(keyBytes);
+                Instant fetchedAt = Instant.ofEpochMilli(buffer.getLong());
+                WeatherDto weather = readWeather(buffer);
+
+                if (fetchedAt.isAfter(oldestUsable)) {
+                    weatherCache.restore(new String(keyBytes, StandardCharsets.UTF_8),
+                            new WeatherCache.Entry(weather, fetchedAt));
+                    restored++;
+                }
+            }
+            return restored;
+        });
+    }
+
+    private static WeatherDto readWeather(ByteBuffer buffer) {
+        byte flags = buffer.get();
+        WeatherDto weather = new WeatherDto();
+        if ((flags & HAS_MAIN) != 0) {
+            WeatherDto.Main main = new WeatherDto.Main();
+            main.setTemp(buffer.getDouble());
+            main.setFeels_like(buffer.getDouble());
+            main.setHumidity(buffer.getInt());
+            weather.setMain(main);
+        }
+        if ((flags & HAS_WIND) != 0) {
+            WeatherDto.Wind wind = new WeatherDto.Wind();
+            wind.setSpeed(buffer.getDouble());
+            weather.setWind(wind);
+        }
+        return weather;
+    }
+}
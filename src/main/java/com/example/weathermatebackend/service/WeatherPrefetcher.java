@@ -0,0 +1,180 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.CityHourlyDemandDto;
+import com.example.weathermatebackend.exception.QuotaExhaustedException;
+import com.example.weathermatebackend.exception.UpstreamUnavailableException;
+import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.*;
+
+/**
+ * Keeps the cities our users search most warm in the cache.
+ * Every rank-refresh interval the recent SearchHistory is mined for a hot set: cities are
+ * scored by how often they were searched at this hour of the day and the next one, plus a
+ * small share of their all-day demand. Known cities are scored by ID, so every spelling of
+ * them adds up, and prefetched by their canonical query; others fall back to the name. Each run then refreshes hot cities whose cache
+ * entry is missing or about to expire, so the first user of the morning gets a cache hit.
+ * Upstream calls made here are capped per run and per hour so prefetching can never
+ * eat the OpenWeatherMap quota that interactive requests need; on top of that the calls
+ * run in the governor's background lane and stop as soon as it runs dry.
+ * Cities trending right now (see {@link TrendingCities}) go ahead of the hot set, so a
+ * sudden spike is kept warm before the next ranking notices it.
+ */
+@Component
+public class WeatherPrefetcher {
+
+    private static final Logger log = LoggerFactory.getLogger(WeatherPrefetcher.class);
+
+    // how much a search outside the upcoming hours counts compared to one inside them
+    private static final double OFF_HOUR_WEIGHT = 0.1;
+
+    private final SearchHistoryRepository historyRepository;
+    private final WeatherService weatherService;
+    private final TrendingCities trendingCities;
+    private final CityIndex cityIndex;
+
+    private final boolean enabled;
+    private final int hotSetSize;
+    private final int trendingSize;
+    private final int lookbackDays;
+    private final Duration rankRefreshInterval;
+    private final Duration lead;
+    private final int maxPerRun;
+    private final int maxPerHour;
+
+    private final Counter prefetches;
+    private final Counter skippedForBudget;
+
+    private volatile List<String> hotCities = List.of();
+    private LocalDateTime rankedAt;
+    private LocalDateTime budgetHour;
+    private int usedThisHour;
+
+    public WeatherPrefetcher(SearchHistoryRepository historyRepository,
+                             WeatherService weatherService,
+                             TrendingCities trendingCities,
+                             CityIndex cityIndex,
+                             @Value("${weather.prefetch.enabled}") boolean enabled,
+                             @Value("${weather.prefetch.hot-set-size}") int hotSetSize,
+                             @Value("${weather.prefetch.trending-size}") int trendingSize,
+                             @Value("${weather.prefetch.lookback.days}") int lookbackDays,
+                             @Value("${weather.prefetch.rank-refresh.minutes}") long rankRefreshMinutes,
+                             @Value("${weather.prefetch.lead.seconds}") long leadSeconds,
+                             @Value("${weather.prefetch.max-per-run}") int maxPerRun,
+                             @Value("${weather.prefetch.max-per-hour}") int maxPerHour,
+                             MeterRegistry meterRegistry) {
+        this.historyRepository = historyRepository;
+        this.weatherService = weatherService;
+        this.trendingCities = trendingCities;
+        this.cityIndex = cityIndex;
+        this.enabled = enabled;
+        this.hotSetSize = hotSetSize;
+        this.trendingSize = trendingSize;
+        this.lookbackDays = lookbackDays;
+        this.rankRefreshInterval = Duration.ofMinutes(rankRefreshMinutes);
+        this.lead = Duration.ofSeconds(leadSeconds);
+        this.maxPerRun = maxPerRun;
+        this.maxPerHour = maxPerHour;
+
+        this.prefetches = Counter.builder("weather.prefetch.calls")
+                .description("Upstream calls made by the prefetcher")
+                .register(meterRegistry);
+        this.skippedForBudget = Counter.builder("weather.prefetch.skipped")
+                .description("Hot cities not checked because the prefetch budget was used up")
+                .register(meterRegistry);
+    }
+
+    @Scheduled(fixedDelayString = "${weather.prefetch.interval.millis}",
+            initialDelayString = "${weather.prefetch.interval.millis}")
+    public void run() {
+        if (!enabled) {
+            return;
+        }
+        LocalDateTime now = LocalDateTime.now();
+        if (rankedAt == null || rankedAt.plus(rankRefreshInterval).isBefore(now)) {
+            hotCities = rankHotCities(now);
+            rankedAt = now;
+        }
+        prefetch(withTrending(hotCities), now);
+    }
+
+    public List<String> getHotCities() {
+        return hotCities;
+    }
+
+    List<String> withTrending(List<String> cities) {
+        Set<String> merged = new LinkedHashSet<>(trendingCities.hotQueries(trendingSize));
+        merged.addAll(cities);
+        return new ArrayList<>(merged);
+    }
+
+    List<String> rankHotCities(LocalDateTime now) {
+        List<CityHourlyDemandDto> demand = historyRepository.countSearchesByCityAndHour(now.minusDays(lookbackDays));
+
+        int currentHour = now.getHour();
+        int nextHour = (currentHour + 1) % 24;
+        Map<String, Double> scores = new HashMap<>();
+        for (CityHourlyDemandDto row : demand) {
+            boolean upcoming = row.getSearchHour() == currentHour || row.getSearchHour() == nextHour;
+            double weight = upcoming ? 1.0 : OFF_HOUR_WEIGHT;
+            scores.merge(query(row), row.getSearches() * weight, Double::sum);
+        }
+
+        return scores.entrySet().stream()
+                .sorted(Map.Entry.<String, Double>comparingByValue().reversed())
+                .limit(hotSetSize)
+                .map(Map.Entry::getKey)
+                .toList();
+    }
+
+    // the same query TrendingCities hands out, so a city in both lists is checked once
+    private String query(CityHourlyDemandDto row) {
+        CityIndex.CityRef known = row.getCityId() == null ? null : cityIndex.byId(row.getCityId());
+        return known != null ? known.query() : row.getCity();
+    }
+
+    void prefetch(List<String> cities, LocalDateTime now) {
+        LocalDateTime hour = now.truncatedTo(ChronoUnit.HOURS);
+        if (!hour.equals(budgetHour)) {
+            budgetHour = hour;
+            usedThisHour = 0;
+        }
+
+        int usedThisRun = 0;
+        for (String city : cities) {
+            if (usedThisRun >= maxPerRun || usedThisHour >= maxPerHour) {
+                skippedForBudget.increment();
+                continue;
+            }
+            try {
+                if (weatherService.prefetch(city, lead)) {
+                    usedThisRun++;
+                    usedThisHour++;
+                    prefetches.increment();
+                }
+            } catch (QuotaExhaustedException e) {
+                // interactive traffic needs the rest of the budget, try again next run
+                skippedForBudget.increment();
+                break;
+            } catch (UpstreamUnavailableException e) {
+                // rejected by the breaker or bulkhead before any call went out
+                log.debug("Prefetch rejected for {}", city, e);
+            } catch (RuntimeException e) {
+                // a failed upstream call still spent quota
+                usedThisRun++;
+                usedThisHour++;
+                log.debug("Prefetch failed for {}", city, e);
+            }
+        }
+    }
+}
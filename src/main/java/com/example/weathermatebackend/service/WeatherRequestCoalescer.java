@@ -0,0 +1,90 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.WeatherDto;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Single-flight guard for upstream weather lookups.
+ * The first caller for a key performs the call; callers arriving while it is in flight
+ * wait for the same result (or failure) instead of issuing their own request.
+ */
+@Component
+public class WeatherRequestCoalescer {
+
+    private final ConcurrentHashMap<String, Flight> inFlight = new ConcurrentHashMap<>();
+
+    private final Counter collapsedCalls;
+    private final DistributionSummary callersPerFlight;
+
+    public WeatherRequestCoalescer(MeterRegistry meterRegistry) {
+        this.collapsedCalls = Counter.builder("weather.upstream.coalesced")
+                .description("Callers that joined an in-flight upstream lookup instead of starting one")
+                .register(meterRegistry);
+        this.callersPerFlight = DistributionSummary.builder("weather.upstream.flight.callers")
+                .description("Number of callers served by a single upstream lookup")
+                .register(meterRegistry);
+    }
+
+    public WeatherDto execute(String key, Supplier<WeatherDto> call) {
+        Flight flight = new Flight();
+        // joiners are counted under the map's lock for the key, so once the leader has removed
+        // the flight below its count can no longer change
+        Flight current = inFlight.compute(key, (k, existing) -> {
+            // a finished flight is only waiting for its leader to remove it; a retry after
+            // its failure must not get the same failure back
+            if (existing == null || existing.result.isDone()) {
+                return flight;
+            }
+            existing.callers.incrementAndGet();
+            return existing;
+        });
+
+        if (current != flight) {
+            // Someone is already fetching this city, wait for their result
+            collapsedCalls.increment();
+            return current.await();
+        }
+
+        try {
+            WeatherDto result = call.get();
+            flight.result.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            flight.result.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(key, flight);
+            callersPerFlight.record(flight.callers.get());
+        }
+    }
+
+    int inFlightCount() {
+        return inFlight.size();
+    }
+
+    private static final class Flight {
+        private final CompletableFuture<WeatherDto> result = new CompletableFuture<>();
+        private final AtomicInteger callers = new AtomicInteger(1);
+
+        private WeatherDto await() {
+            try {
+                return result.join();
+            } catch (CompletionException e) {
+                // rethrow the leader's exception as-is so callers see the same failure
+                if (e.getCause() instanceof RuntimeException cause) {
+                    throw cause;
+                }
+                throw e;
+            }
+        }
+    }
+}
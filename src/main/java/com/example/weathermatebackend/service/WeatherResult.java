@@ -0,0 +1,10 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.WeatherDto;
+
+/**
+ * Weather returned to a caller together with how old it is.
+ * ageSeconds is 0 for a response fetched during this request.
+ */
+public record WeatherResult(WeatherDto weather, long ageSeconds) {
+}
@@ -1,29 +1,82 @@
 package com.example.weathermatebackend.service;
 
+import com.example.weathermatebackend.dto.CityWeatherDto;
+import com.example.weathermatebackend.dto.HistoryPageDto;
 import com.example.weathermatebackend.dto.SearchHistoryDto;
 import com.example.weathermatebackend.dto.WeatherDto;
+import com.example.weathermatebackend.exception.InvalidRequestException;
+import com.example.weathermatebackend.exception.QuotaExhaustedException;
+import com.example.weathermatebackend.exception.UpstreamUnavailableException;
 import com.example.weathermatebackend.model.SearchHistory;
-import com.example.weathermatebackend.model.User;
 import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.*;
 
 @Service
 public class WeatherService {
 
+    private static final Logger log = LoggerFactory.getLogger(WeatherService.class);
+
     @Value("${openweathermap.api.key}")
     private String apiKey;
 
+    @Value("${weather.batch.max-cities}")
+    private int batchMaxCities;
+
+    @Value("${weather.batch.parallelism}")
+    private int batchParallelism;
+
+    @Value("${weather.history.page.max-size}")
+    private int historyMaxPageSize;
+
     private final RestClient restClient;
     private final SearchHistoryRepository historyRepository;
+    private final SearchHistoryWriter historyWriter;
+    private final RecentHistoryBuffer recentHistory;
+    private final TrendingCities trendingCities;
+    private final WeatherCache weatherCache;
+    private final CityIndex cityIndex;
+    private final WeatherRequestCoalescer coalescer;
+    private final WeatherUpstreamGuard upstreamGuard;
+    private final UpstreamQuotaGovernor quotaGovernor;
+    private final Executor refreshExecutor;
 
-    public WeatherService(RestClient restClient, SearchHistoryRepository historyRepository) {
+    // cities with a background refresh already queued or running
+    private final Set<String> refreshing = ConcurrentHashMap.newKeySet();
+
+    public WeatherService(RestClient restClient, SearchHistoryRepository historyRepository,
+                          SearchHistoryWriter historyWriter, RecentHistoryBuffer recentHistory,
+                          TrendingCities trendingCities,
+                          WeatherCache weatherCache, CityIndex cityIndex,
+                          WeatherRequestCoalescer coalescer,
+                          WeatherUpstreamGuard upstreamGuard, UpstreamQuotaGovernor quotaGovernor,
+                          @Qualifier("weatherRefreshExecutor") Executor refreshExecutor) {
         this.restClient = restClient;
         this.historyRepository = historyRepository;
+        this.historyWriter = historyWriter;
+        this.recentHistory = recentHistory;
+        this.trendingCities = trendingCities;
+        this.weatherCache = weatherCache;
+        this.cityIndex = cityIndex;
+        this.coalescer = coalescer;
+        this.upstreamGuard = upstreamGuard;
+        this.quotaGovernor = quotaGovernor;
+        this.refreshExecutor = refreshExecutor;
     }
 
     protected WeatherDto callWeatherApi(String city) {
@@ -33,25 +86,238 @@ public class WeatherService {
                 .body(WeatherDto.class);
     }
 
-    public WeatherDto fetchWeather(String city, User user) {
-        // Call external API
-        WeatherDto response = callWeatherApi(city);
+    private WeatherDto loadWeather(CityIndex.CityRef city, UpstreamQuotaGovernor.Lane lane) {
+        // another flight may have filled the cache between our miss and becoming leader
+        WeatherCache.Entry cached = weatherCache.get(city.key());
+        if (cached != null && weatherCache.isFresh(cached)) {
+            return cached.weather();
+        }
+        return fetchAndCache(city, lane);
+    }
+
+    private WeatherDto fetchAndCache(CityIndex.CityRef city, UpstreamQuotaGovernor.Lane lane) {
+        if (!quotaGovernor.tryAcquire(lane)) {
+            throw new QuotaExhaustedException("Weather request budget exhausted, please retry shortly",
+                    lane == UpstreamQuotaGovernor.Lane.BACKGROUND);
+        }
 
-        // Save history
+        // fails fast while the provider is down or saturated
+        WeatherDto response;
+        try {
+            response = upstreamGuard.call(() -> callWeatherApi(city.query()));
+        } catch (UpstreamUnavailableException e) {
+            // the breaker or bulkhead turned it away before it reached the provider, so an
+            // outage does not drain the budget users need once it recovers
+            quotaGovernor.refund();
+            throw e;
+        }
         if (response != null) {
-            SearchHistory history = new SearchHistory();
-            history.setCity(city);
-            history.setUser(user);
-            history.setSearchedAt(LocalDateTime.now());
-            history.setTemperature(response.getMain().getTemp());
-            historyRepository.save(history);
+            weatherCache.put(city.key(), response);
+        }
+        return response;
+    }
+
+    private void refreshInBackground(CityIndex.CityRef city) {
+        String key = city.key();
+        if (!refreshing.add(key)) {
+            return;
         }
+        try {
+            refreshExecutor.execute(() -> {
+                try {
+                    coalescer.execute(key, () -> loadWeather(city, UpstreamQuotaGovernor.Lane.BACKGROUND));
+                } catch (QuotaExhaustedException e) {
+                    // users have priority on the quota; keep serving the stale entry
+                    log.debug("Skipped background refresh for {}: {}", key, e.getMessage());
+                } catch (RuntimeException e) {
+                    // the stale entry keeps being served until the grace window runs out
+                    log.warn("Background refresh failed for {}", key, e);
+                } finally {
+                    refreshing.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            refreshing.remove(key);
+            log.warn("Could not schedule background refresh for {}", key, e);
+        }
+    }
 
+    public WeatherDto fetchWeather(String city, int userId) {
+        WeatherResult result = fetchWeatherResult(city, userId);
+        return result.weather();
+    }
 
-        return response;
+    public WeatherResult fetchWeatherResult(String city, int userId) {
+        CityIndex.CityRef cityRef = cityIndex.resolve(city);
+        WeatherResult result = lookupWeather(cityRef);
+
+        // Save history (written behind the response)
+        if (result.weather() != null) {
+            trendingCities.record(cityRef);
+            historyWriter.enqueue(toHistory(cityRef, result.weather(), userId));
+        }
+
+        return result;
+    }
+
+    /**
+     * Looks up several cities at once. Lookups fan out on virtual threads, at most
+     * batchParallelism at a time; a failing city yields an error entry instead of
+     * failing the whole batch. History for all successful lookups goes to the write-behind queue.
+     */
+    public List<CityWeatherDto> fetchWeatherBatch(List<String> cities, int userId) {
+        List<BatchItem> distinctCities = distinctCities(cities);
+        if (distinctCities.isEmpty() || distinctCities.size() > batchMaxCities) {
+            throw new InvalidRequestException("Between 1 and " + batchMaxCities + " cities are allowed per request");
+        }
+
+        Semaphore permits = new Semaphore(batchParallelism);
+        List<Future<CityWeatherDto>> futures = new ArrayList<>(distinctCities.size());
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (BatchItem item : distinctCities) {
+                futures.add(executor.submit(() -> lookupForBatch(item, permits)));
+            }
+        }
+
+        List<CityWeatherDto> results = new ArrayList<>(futures.size());
+        List<SearchHistory> histories = new ArrayList<>(futures.size());
+        for (int i = 0; i < futures.size(); i++) {
+            CityWeatherDto result = futures.get(i).resultNow();
+            results.add(result);
+            if (result.getWeather() != null) {
+                trendingCities.record(distinctCities.get(i).city());
+                histories.add(toHistory(distinctCities.get(i).city(), result.getWeather(), userId));
+            }
+        }
+
+        if (!histories.isEmpty()) {
+            historyWriter.enqueueAll(histories);
+        }
+        return results;
+    }
+
+    private CityWeatherDto lookupForBatch(BatchItem item, Semaphore permits) {
+        String city = item.input();
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return CityWeatherDto.failed(city, "Lookup interrupted");
+        }
+        try {
+            WeatherResult result = lookupWeather(item.city());
+            return CityWeatherDto.succeeded(city, result.weather(), result.ageSeconds());
+        } catch (HttpClientErrorException e) {
+            return CityWeatherDto.failed(city, e.getStatusCode().isSameCodeAs(HttpStatus.NOT_FOUND)
+                    ? "City not found" : "Weather lookup rejected by provider");
+        } catch (UpstreamUnavailableException e) {
+            return CityWeatherDto.failed(city, e.getMessage());
+        } catch (RuntimeException e) {
+            log.warn("Batch weather lookup failed for {}", city, e);
+            return CityWeatherDto.failed(city, "Weather lookup failed");
+        } finally {
+            permits.release();
+        }
+    }
+
+    // one lookup per city even if the client repeats it with different spelling
+    private List<BatchItem> distinctCities(List<String> cities) {
+        Map<String, BatchItem> byKey = new LinkedHashMap<>();
+        for (String city : cities) {
+            if (city != null && !city.isBlank()) {
+                CityIndex.CityRef cityRef = cityIndex.resolve(city);
+                byKey.putIfAbsent(cityRef.key(), new BatchItem(city.trim(), cityRef));
+            }
+        }
+        return new ArrayList<>(byKey.values());
+    }
+
+    /**
+     * Refreshes a city ahead of demand if its cache entry is missing or expires within lead.
+     * Returns true when an upstream call was made. Runs in the background quota lane and
+     * throws {@link QuotaExhaustedException} once that lane is out of budget.
+     */
+    public boolean prefetch(String city, Duration lead) {
+        CityIndex.CityRef cityRef = cityIndex.resolve(city);
+        WeatherCache.Entry cached = weatherCache.get(cityRef.key());
+        if (cached != null && !weatherCache.expiresWithin(cached, lead)) {
+            return false;
+        }
+        coalescer.execute(cityRef.key(), () -> fetchAndCache(cityRef, UpstreamQuotaGovernor.Lane.BACKGROUND));
+        return true;
+    }
+
+    private WeatherResult lookupWeather(CityIndex.CityRef city) {
+        String key = city.key();
+
+        // Serve from cache, call external API only on a miss
+        WeatherCache.Entry cached = weatherCache.get(key);
+        if (cached != null) {
+            // Past its TTL but inside the grace window: answer now, refresh behind the caller
+            if (!weatherCache.isFresh(cached)) {
+                refreshInBackground(city);
+            }
+            return new WeatherResult(cached.weather(), cached.ageSeconds());
+        }
+
+        // Concurrent misses for the same city share one upstream call
+        try {
+            return new WeatherResult(coalescer.execute(key,
+                    () -> loadWeather(city, UpstreamQuotaGovernor.Lane.INTERACTIVE)), 0);
+        } catch (QuotaExhaustedException e) {
+            if (!e.isBackground()) {
+                throw e;
+            }
+            // we joined a prefetch or refresh that ran out of background budget; users have their own lane
+            return new WeatherResult(coalescer.execute(key,
+                    () -> loadWeather(city, UpstreamQuotaGovernor.Lane.INTERACTIVE)), 0);
+        }
+    }
+
+    private static SearchHistory toHistory(CityIndex.CityRef city, WeatherDto weather, int userId) {
+        SearchHistory history = new SearchHistory();
+        history.setCity(city.name());
+        history.setCityId(city.isKnown() ? city.id() : null);
+        history.setUserId(userId);
+        history.setSearchedAt(LocalDateTime.now());
+        history.setTemperature(weather.getMain().getTemp());
+        return history;
+    }
+
+    /**
+     * Returns one page of the user's history, newest first, continuing into rolled-up daily
+     * rows once raw rows run out. before is the cursor from the previous page (null for the
+     * first page); size is capped at weather.history.page.max-size.
+     */
+    public HistoryPageDto getHistory(int userId, String before, int size) {
+        if (size < 1) {
+            throw new InvalidRequestException("Page size must be at least 1");
+        }
+        int pageSize = Math.min(size, historyMaxPageSize);
+
+        // one extra row tells us whether there is a next page
+        int limit = pageSize + 1;
+        List<SearchHistoryDto> rows;
+        if (before == null || before.isBlank()) {
+            // first pages usually come from the in-memory ring
+            rows = recentHistory.firstPage(userId, limit);
+            if (rows == null) {
+                rows = historyRepository.findPage(userId, limit);
+            }
+        } else {
+            HistoryCursor cursor = HistoryCursor.decode(before);
+            rows = historyRepository.findPageAfter(userId, cursor.searchedAt(), cursor.id(), limit);
+        }
+
+        if (rows.size() <= pageSize) {
+            return new HistoryPageDto(rows, null);
+        }
+        List<SearchHistoryDto> page = rows.subList(0, pageSize);
+        SearchHistoryDto last = page.getLast();
+        return new HistoryPageDto(page, new HistoryCursor(last.getSearchedAt(), last.getId()).encode());
     }
 
-    public List<SearchHistoryDto> getHistory(User user) {
-        return historyRepository.findByUserOrderBySearchedAtDesc(user);
+    // a city as the client typed it, plus what it resolved to
+    private record BatchItem(String input, CityIndex.CityRef city) {
     }
 }
@@ -0,0 +1,180 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.exception.UpstreamUnavailableException;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Circuit breaker and bulkhead for calls to OpenWeatherMap.
+ *  - Bulkhead: at most max-concurrent upstream calls at once, so a slow provider
+ *    can only tie up that many request threads.
+ *  - Breaker: after failure-threshold consecutive failures it opens and rejects calls
+ *    immediately; once open-seconds have passed it lets half-open-probes calls through
+ *    and closes again only if they all succeed.
+ * Rejections surface as {@link UpstreamUnavailableException} (503).
+ */
+@Component
+public class WeatherUpstreamGuard {
+
+    private static final Logger log = LoggerFactory.getLogger(WeatherUpstreamGuard.class);
+
+    public enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private final int halfOpenProbes;
+    private final long bulkheadWaitMillis;
+
+    private final Semaphore bulkhead;
+    private final MeterRegistry meterRegistry;
+    private final Counter breakerRejections;
+    private final Counter bulkheadRejections;
+
+    // guarded by this
+    private State state = State.CLOSED;
+    private int consecutiveFailures;
+    private long openedAt;
+    private int probesInFlight;
+    private int probeSuccesses;
+
+    public WeatherUpstreamGuard(@Value("${weather.upstream.breaker.failure-threshold}") int failureThreshold,
+                                @Value("${weather.upstream.breaker.open.seconds}") long openSeconds,
+                                @Value("${weather.upstream.breaker.half-open-probes}") int halfOpenProbes,
+                                @Value("${weather.upstream.bulkhead.max-concurrent}") int maxConcurrent,
+                                @Value("${weather.upstream.bulkhead.max-wait.millis}") long bulkheadWaitMillis,
+                                MeterRegistry meterRegistry) {
+        this.failureThreshold = failureThreshold;
+        this.openNanos = TimeUnit.SECONDS.toNanos(openSeconds);
+        this.halfOpenProbes = halfOpenProbes;
+        this.bulkheadWaitMillis = bulkheadWaitMillis;
+        this.bulkhead = new Semaphore(maxConcurrent);
+        this.meterRegistry = meterRegistry;
+
+        this.breakerRejections = Counter.builder("weather.upstream.rejected")
+                .tag("reason", "breaker_open")
+                .register(meterRegistry);
+        this.bulkheadRejections = Counter.builder("weather.upstream.rejected")
+                .tag("reason", "bulkhead_full")
+                .register(meterRegistry);
+        Gauge.builder("weather.upstream.breaker.state", this, guard -> guard.getState().ordinal())
+                .description("0 = closed, 1 = open, 2 = half-open")
+                .register(meterRegistry);
+        Gauge.builder("weather.upstream.bulkhead.available", bulkhead, Semaphore::availablePermits)
+                .register(meterRegistry);
+    }
+
+    public <T> T call(Supplier<T> upstreamCall) {
+        boolean probe = acquirePermission();
+
+        if (!tryEnterBulkhead()) {
+            if (probe) {
+                releaseProbe();
+            }
+            bulkheadRejections.increment();
+            throw new UpstreamUnavailableException("Weather provider is busy, please retry shortly");
+        }
+
+        try {
+            T result = upstreamCall.get();
+            onSuccess(probe);
+            return result;
+        } catch (RuntimeException e) {
+            if (isUpstreamFailure(e)) {
+                onFailure();
+            } else {
+                onSuccess(probe);
+            }
+            throw e;
+        } finally {
+            bulkhead.release();
+        }
+    }
+
+    public synchronized State getState() {
+        return state;
+    }
+
+    // returns true when the caller is a half-open probe
+    private synchronized boolean acquirePermission() {
+        if (state == State.OPEN && System.nanoTime() - openedAt >= openNanos) {
+            transitionTo(State.HALF_OPEN);
+        }
+        if (state == State.CLOSED) {
+            return false;
+        }
+        if (state == State.HALF_OPEN && probesInFlight + probeSuccesses < halfOpenProbes) {
+            probesInFlight++;
+            return true;
+        }
+        breakerRejections.increment();
+        throw new UpstreamUnavailableException("Weather provider is unavailable, please retry later");
+    }
+
+    private synchronized void releaseProbe() {
+        if (state == State.HALF_OPEN) {
+            probesInFlight--;
+        }
+    }
+
+    private boolean tryEnterBulkhead() {
+        try {
+            return bulkhead.tryAcquire(bulkheadWaitMillis, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private synchronized void onSuccess(boolean probe) {
+        consecutiveFailures = 0;
+        if (probe && state == State.HALF_OPEN) {
+            probesInFlight--;
+            probeSuccesses++;
+            if (probeSuccesses >= halfOpenProbes) {
+                transitionTo(State.CLOSED);
+            }
+        }
+    }
+
+    private synchronized void onFailure() {
+        consecutiveFailures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && consecutiveFailures >= failureThreshold)) {
+            transitionTo(State.OPEN);
+        }
+    }
+
+    private void transitionTo(State next) {
+        log.info("Weather upstream circuit {} -> {}", state, next);
+        meterRegistry.counter("weather.upstream.breaker.transitions",
+                "from", state.name(), "to", next.name()).increment();
+
+        state = next;
+        probesInFlight = 0;
+        probeSuccesses = 0;
+        if (next == State.OPEN) {
+            openedAt = System.nanoTime();
+        }
+        if (next == State.CLOSED) {
+            consecutiveFailures = 0;
+        }
+    }
+
+    // 4xx answers (e.g. unknown city) mean the provider is healthy; 429 means we are being throttled
+    private boolean isUpstreamFailure(RuntimeException e) {
+        if (e instanceof HttpClientErrorException clientError) {
+            return clientError.getStatusCode().isSameCodeAs(HttpStatus.TOO_MANY_REQUESTS);
+        }
+        return true;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.weathermatebackend.benchmark;
+
+import com.example.weathermatebackend.service.JwtService;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtParser;
+import io.jsonwebtoken.Jwts;
+import io.jsonwebtoken.io.Decoders;
+import io.jsonwebtoken.security.Keys;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.SecretKey;
+import java.util.Date;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of authenticating one request carrying an access token:
+ *  - perRequestParsing: what JwtFilter did before, extractUsername then validateToken
+ *                       (three signature checks, each decoding the key and building a parser)
+ *  - parseOnce:         one check with the precomputed parser, bypassing the claims cache
+ *  - cachedVerify:      {@link JwtService#verify(String)} for a token seen before (digest lookup)
+ * Bytes allocated per call are reported by the GC profiler as gc.alloc.rate.norm.
+ *
+ * Run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.example.weathermatebackend.benchmark.JwtVerifyBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtVerifyBenchmark {
+
+    private static final String SECRET = "ZmFrZXNlY3JldGtleXRlc3Rmb3J0ZXN0aW5nMTIzNDU2Nzg5MGFiY2RlZj0=";
+
+    private JwtService jwtService;
+    private JwtParser parser;
+    private String token;
+
+    @Setup
+    public void setUp() {
+        jwtService = new JwtService(SECRET, 10_000, new SimpleMeterRegistry());
+        ReflectionTestUtils.setField(jwtService, "accessTokenExpirationMillis", 3_600_000L);
+        token = jwtService.generateAccessToken(1, "john");
+        parser = Jwts.parser().verifyWith(Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET))).build();
+        jwtService.verify(token);
+    }
+
+    @Benchmark
+    public boolean perRequestParsing() {
+        String username = parseWithFreshKey(token).getSubject();
+        boolean sameUser = parseWithFreshKey(token).getSubject().equals(username);
+        return sameUser && !parseWithFreshKey(token).getExpiration().before(new Date());
+    }
+
+    @Benchmark
+    public Claims parseOnce() {
+        return parser.parseSignedClaims(token).getPayload();
+    }
+
+    @Benchmark
+    public Claims cachedVerify() {
+        return jwtService.verify(token);
+    }
+
+    private static Claims parseWithFreshKey(String token) {
+        SecretKey key = Keys.hmacShaKeyFor(Decoders.BASE64.decode(SECRET));
+        return Jwts.parser().verifyWith(key).build().parseSignedClaims(token).getPayload();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(JwtVerifyBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
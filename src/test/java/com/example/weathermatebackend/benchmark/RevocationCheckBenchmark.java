@@ -0,0 +1,66 @@
+package com.example.weathermatebackend.benchmark;
+
+import com.example.weathermatebackend.service.RevokedTokenStore;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.file.Path;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of {@link RevokedTokenStore#isRevoked(String)} with 100k revoked IDs:
+ *  - notRevoked: the usual case, answered by the Bloom filter alone
+ *  - revoked:    a replayed token, confirmed in the exact table
+ * Both should report gc.alloc.rate.norm of about 0 bytes per call.
+ *
+ * Run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.example.weathermatebackend.benchmark.RevocationCheckBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class RevocationCheckBenchmark {
+
+    private RevokedTokenStore store;
+    private String revokedId;
+    private String unknownId;
+
+    @Setup
+    public void setUp() {
+        store = new RevokedTokenStore(100_000, 0.001, false, Path.of("unused"), new SimpleMeterRegistry());
+        long expiresAt = System.currentTimeMillis() + 3_600_000;
+        for (int i = 0; i < 100_000; i++) {
+            revokedId = UUID.randomUUID().toString();
+            store.revoke(revokedId, expiresAt);
+        }
+        unknownId = UUID.randomUUID().toString();
+    }
+
+    @Benchmark
+    public boolean notRevoked() {
+        return store.isRevoked(unknownId);
+    }
+
+    @Benchmark
+    public boolean revoked() {
+        return store.isRevoked(revokedId);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RevocationCheckBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.weathermatebackend.benchmark;
+
+import com.example.weathermatebackend.config.OwmWeatherMessageConverter;
+import com.example.weathermatebackend.dto.WeatherDto;
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parse latency and allocation of an OpenWeatherMap /weather payload:
+ *  - dataBinding: what RestClient did before, full Jackson data binding into WeatherDto
+ *  - streaming:   {@link OwmWeatherMessageConverter#decode(InputStream)}
+ * Bytes allocated per call are reported by the GC profiler as gc.alloc.rate.norm.
+ *
+ * Run with:
+ *   mvn test-compile exec:java -Dexec.classpathScope=test \
+ *       -Dexec.mainClass=com.example.weathermatebackend.benchmark.WeatherDecodeBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class WeatherDecodeBenchmark {
+
+    private byte[] payload;
+    private ObjectMapper objectMapper;
+
+    @Setup
+    public void setUp() throws IOException {
+        try (InputStream in = WeatherDecodeBenchmark.class.getResourceAsStream("/owm-weather-london.json")) {
+            payload = in.readAllBytes();
+        }
+        // same settings Spring Boot applies to the auto-configured mapper
+        objectMapper = new ObjectMapper().disable(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES);
+    }
+
+    @Benchmark
+    public WeatherDto dataBinding() throws IOException {
+        return objectMapper.readValue(new ByteArrayInputStream(payload), WeatherDto.class);
+    }
+
+    @Benchmark
+    public WeatherDto streaming() throws IOException {
+        return OwmWeatherMessageConverter.decode(new ByteArrayInputStream(payload));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(WeatherDecodeBenchmark.class.getSimpleName())
+                .addProfiler(GCProfiler.class)
+                .build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.weathermatebackend.config;
+
+import com.example.weathermatebackend.controller.UserController;
+import com.example.weathermatebackend.model.User;
+import com.example.weathermatebackend.model.UserPrinciple;
+import com.example.weathermatebackend.service.*;
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.WebMvcTest;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Import;
+import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.test.context.bean.override.mockito.MockitoBean;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RestController;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.when;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+/**
+ * Unit tests for {@link JwtFilter} inside the real security chain.
+ * Focus: only access tokens authenticate API calls; refresh tokens, revoked or not, get 401.
+ */
+@WebMvcTest(controllers = UserController.class, properties = {
+        "jwt.secret=ZmFrZXNlY3JldGtleXRlc3Rmb3J0ZXN0aW5nMTIzNDU2Nzg5MGFiY2RlZj0=",
+        "app.cors.allowed-origins=http://localhost",
+        "app.auth.revocation.snapshot.enabled=false"
+})
+@Import({SecurityConfig.class, RefreshTokenLogoutHandler.class, JwtService.class, RevokedTokenStore.class,
+        JwtFilterTest.Metrics.class, JwtFilterTest.Probe.class})
+class JwtFilterTest {
+
+    @TestConfiguration
+    static class Metrics {
+        @Bean
+        MeterRegistry meterRegistry() {
+            return new SimpleMeterRegistry();
+        }
+    }
+
+    // a protected endpoint that just answers 200
+    @RestController
+    static class Probe {
+        @GetMapping("/api/probe")
+        String probe() {
+            return "ok";
+        }
+    }
+
+    @Autowired
+    private MockMvc mockMvc;
+
+    @Autowired
+    private JwtService jwtService;
+
+    @Autowired
+    private RevokedTokenStore revokedTokens;
+
+    @MockitoBean
+    private PrincipalCache principalCache;
+
+    @MockitoBean
+    private UserService userService;
+
+    @MockitoBean
+    private MyUserDetailsService userDetailsService;
+
+    @MockitoBean
+    private PasswordEncoder passwordEncoder;
+
+    @MockitoBean
+    private LoginThrottle loginThrottle;
+
+    @BeforeEach
+    void setUp() {
+        ReflectionTestUtils.setField(jwtService, "accessTokenExpirationMillis", 60_000L);
+        ReflectionTestUtils.setField(jwtService, "refreshTokenExpirationMillis", 600_000L);
+        // every token's user exists, so only the token type decides
+        when(principalCache.resolve(any(Claims.class))).thenReturn(new UserPrinciple(new User(1, "john", null)));
+    }
+
+    /**
+     * Scenario: A refresh token that was rotated (revoked) is sent as a Bearer token.
+     * Expectation: The request is unauthenticated and gets 401.
+     */
+    @Test
+    void revokedRefreshToken_ShouldNotAuthenticate() throws Exception {
+        // Arrange → issue a refresh token and revoke it, as /refresh does
+        String refreshToken = jwtService.generateRefreshToken(1, "john");
+        Claims claims = jwtService.verify(refreshToken);
+        revokedTokens.revoke(claims.getId(), claims.getExpiration().getTime());
+
+        // Act & Assert
+        mockMvc.perform(get("/api/probe").header("Authorization", "Bearer " + refreshToken))
+                .andExpect(status().isUnauthorized());
+    }
+
+    /**
+     * Scenario: A refresh token that is still valid is sent as a Bearer token.
+     * Expectation: 401 as well; refresh tokens are only good at /refresh.
+     */
+    @Test
+    void refreshToken_ShouldNotAuthenticate() throws Exception {
+        String refreshToken = jwtService.generateRefreshToken(1, "john");
+
+        mockMvc.perform(get("/api/probe").header("Authorization", "Bearer " + refreshToken))
+                .andExpect(status().isUnauthorized());
+    }
+
+    /**
+     * Scenario: An access token is sent as a Bearer token.
+     * Expectation: The request reaches the endpoint.
+     */
+    @Test
+    void accessToken_ShouldAuthenticate() throws Exception {
+        String accessToken = jwtService.generateAccessToken(1, "john");
+
+        mockMvc.perform(get("/api/probe").header("Authorization", "Bearer " + accessToken))
+                .andExpect(status().isOk());
+    }
+}
@@ -0,0 +1,59 @@
+package com.example.weathermatebackend.config;
+
+import com.example.weathermatebackend.dto.WeatherDto;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link OwmWeatherMessageConverter}.
+ * Focus: only the fields WeatherDto needs are read, everything else is skipped.
+ */
+class OwmWeatherMessageConverterTest {
+
+    /**
+     * Scenario: Decode a full OpenWeatherMap /weather response.
+     * Expectation: temp, feels_like, humidity and wind speed are populated.
+     */
+    @Test
+    void decode_ShouldReadWeatherFieldsFromFullPayload() throws IOException {
+        try (InputStream in = getClass().getResourceAsStream("/owm-weather-london.json")) {
+            WeatherDto weather = OwmWeatherMessageConverter.decode(in);
+
+            assertEquals(287.45, weather.getMain().getTemp());
+            assertEquals(286.9, weather.getMain().getFeels_like());
+            assertEquals(77, weather.getMain().getHumidity());
+            assertEquals(5.14, weather.getWind().getSpeed());
+        }
+    }
+
+    /**
+     * Scenario: The payload has no wind block and unknown nested fields inside main.
+     * Expectation: Decoding succeeds, wind stays null and unknown fields are ignored.
+     */
+    @Test
+    void decode_ShouldSkipUnknownNestedFields() throws IOException {
+        String json = "{\"main\":{\"extra\":{\"a\":[1,2]},\"temp\":1.5},\"list\":[{\"x\":1}]}";
+
+        WeatherDto weather = OwmWeatherMessageConverter.decode(
+                new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+
+        assertEquals(1.5, weather.getMain().getTemp());
+        assertNull(weather.getWind());
+    }
+
+    /**
+     * Scenario: The body is not a JSON object.
+     * Expectation: An IOException is thrown instead of returning an empty DTO.
+     */
+    @Test
+    void decode_ShouldRejectNonObjectPayload() {
+        assertThrows(IOException.class, () -> OwmWeatherMessageConverter.decode(
+                new ByteArrayInputStream("[]".getBytes(StandardCharsets.UTF_8))));
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.weathermatebackend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.ClassPathResource;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link CityIndex}.
+ * Focus: different spellings of the same city resolve to one canonical ID.
+ */
+class CityIndexTest {
+
+    private final CityIndex cityIndex = new CityIndex(new ClassPathResource("cities.csv"));
+
+    /**
+     * Scenario: The same city typed with different case, spacing and country suffix.
+     * Expectation: All variants share one ID and cache key.
+     */
+    @Test
+    void resolve_ShouldIgnoreCaseWhitespaceAndCountrySuffix() {
+        CityIndex.CityRef london = cityIndex.resolve("London");
+
+        assertTrue(london.isKnown());
+        assertEquals(london, cityIndex.resolve("london "));
+        assertEquals(london, cityIndex.resolve("  LONDON,gb"));
+        assertEquals(london, cityIndex.resolve("London, UK"));
+        assertEquals("London,GB", london.query());
+    }
+
+    /**
+     * Scenario: A city typed with and without diacritics, or by a common alias.
+     * Expectation: Both resolve to the canonical entry.
+     */
+    @Test
+    void resolve_ShouldFoldDiacriticsAndAliases() {
+        CityIndex.CityRef lodz = cityIndex.resolve("Łódź");
+
+        assertEquals(lodz, cityIndex.resolve("Lodz"));
+        assertEquals("Łódź", lodz.name());
+        assertEquals(cityIndex.resolve("Mumbai"), cityIndex.resolve("Bombay"));
+        assertEquals(cityIndex.resolve("São Paulo"), cityIndex.resolve("sao-paulo"));
+    }
+
+    /**
+     * Scenario: A country suffix selects a city that shares its name with a more common one.
+     * Expectation: The bare name resolves to the first listed city, the suffix to the other.
+     */
+    @Test
+    void resolve_ShouldUseCountryToDisambiguate() {
+        assertEquals("GB", cityIndex.resolve("London").country());
+        assertEquals("CA", cityIndex.resolve("London, CA").country());
+    }
+
+    /**
+     * Scenario: A city that is not in the bundled list.
+     * Expectation: It resolves without an ID, keyed by its folded spelling.
+     */
+    @Test
+    void resolve_ShouldKeyUnknownCitiesByFoldedName() {
+        CityIndex.CityRef unknown = cityIndex.resolve("  Springfield ");
+
+        assertFalse(unknown.isKnown());
+        assertEquals("Springfield", unknown.query());
+        assertEquals(unknown.key(), cityIndex.resolve("SPRINGFIELD").key());
+    }
+}
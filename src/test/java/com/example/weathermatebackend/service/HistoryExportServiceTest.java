@@ -0,0 +1,102 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.HistoryExportRow;
+import com.example.weathermatebackend.exception.InvalidRequestException;
+import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.transaction.PlatformTransactionManager;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link HistoryExportService}.
+ * Focus: NDJSON and CSV output and closing the repository stream.
+ */
+@ExtendWith(MockitoExtension.class)
+class HistoryExportServiceTest {
+
+    @Mock
+    private SearchHistoryRepository historyRepository;
+
+    @Mock
+    private PlatformTransactionManager transactionManager;
+
+    private HistoryExportService exportService;
+
+    @BeforeEach
+    void setUp() {
+        exportService = new HistoryExportService(historyRepository, transactionManager);
+    }
+
+    /**
+     * Scenario: A user exports two history rows as NDJSON.
+     * Expectation: One JSON object per line and the cursor stream is closed afterwards.
+     */
+    @Test
+    void exportUser_ShouldWriteOneJsonObjectPerLineAndCloseStream() throws Exception {
+        // Arrange
+        AtomicBoolean closed = new AtomicBoolean();
+        Stream<HistoryExportRow> rows = Stream.of(row(7, "Colombo", 1, 30.5, 1), row(7, "Kandy", null, 22.0, 3));
+        when(historyRepository.streamByUser(7)).thenReturn(rows.onClose(() -> closed.set(true)));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        // Act
+        exportService.exportUser(7, HistoryExportService.Format.NDJSON).writeTo(out);
+
+        // Assert
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("{\"userId\":7,\"city\":\"Colombo\",\"cityId\":1,\"searchedAt\":\"2025-03-01T12:00\","
+                + "\"temperature\":30.5,\"searches\":1}", lines[0]);
+        assertFalse(lines[1].contains("cityId"));
+        assertTrue(closed.get());
+    }
+
+    /**
+     * Scenario: An admin exports as CSV and a city name contains a comma.
+     * Expectation: A header line, then the awkward field quoted.
+     */
+    @Test
+    void exportAll_ShouldWriteCsvWithQuotedFields() throws Exception {
+        HistoryExportRow row = row(3, "Washington, D.C.", null, 12.0, 1);
+        when(historyRepository.streamAll()).thenReturn(Stream.of(row));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        exportService.exportAll(HistoryExportService.Format.CSV).writeTo(out);
+
+        assertEquals("user_id,city,city_id,searched_at,temperature,searches\n"
+                + "3,\"Washington, D.C.\",,2025-03-01T12:00,12.0,1\n", out.toString(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Scenario: A client asks for an unknown export format.
+     * Expectation: Rejected as a bad request.
+     */
+    @Test
+    void formatParse_ShouldRejectUnknownFormat() {
+        assertEquals(HistoryExportService.Format.CSV, HistoryExportService.Format.parse("CSV"));
+        assertThrows(InvalidRequestException.class, () -> HistoryExportService.Format.parse("xml"));
+    }
+
+    private static HistoryExportRow row(Integer userId, String city, Integer cityId, double temperature, int searches) {
+        HistoryExportRow row = mock(HistoryExportRow.class);
+        when(row.getUserId()).thenReturn(userId);
+        when(row.getCity()).thenReturn(city);
+        when(row.getCityId()).thenReturn(cityId);
+        when(row.getSearchedAt()).thenReturn(LocalDateTime.of(2025, 3, 1, 12, 0));
+        when(row.getTemperature()).thenReturn(temperature);
+        when(row.getSearches()).thenReturn(searches);
+        return row;
+    }
+}
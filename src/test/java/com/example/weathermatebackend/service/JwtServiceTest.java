@@ -1,5 +1,7 @@
 package com.example.weathermatebackend.service;
 
+import io.jsonwebtoken.Claims;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.springframework.security.core.userdetails.UserDetails;
@@ -18,10 +20,13 @@ class JwtServiceTest {
 
     private JwtService jwtService;
 
+    private SimpleMeterRegistry meterRegistry;
+
     @BeforeEach
     void setUp() {
         // Use a fixed Base64-encoded secret key for testing purposes
-        jwtService = new JwtService("ZmFrZXNlY3JldGtleXRlc3Rmb3J0ZXN0aW5nMTIzNDU2Nzg5MGFiY2RlZj0=");
+        meterRegistry = new SimpleMeterRegistry();
+        jwtService = new JwtService("ZmFrZXNlY3JldGtleXRlc3Rmb3J0ZXN0aW5nMTIzNDU2Nzg5MGFiY2RlZj0=", 100, meterRegistry);
 
         // Inject expiration times for access and refresh tokens
         ReflectionTestUtils.setField(jwtService, "accessTokenExpirationMillis", 3600000L);  // 1 hour
@@ -30,13 +35,43 @@ class JwtServiceTest {
 
     /**
      * Scenario: Generate an access token for a user.
-     * Expectation: The token should contain the correct username in its claims.
+     * Expectation: The token should contain the correct username and user ID in its claims.
      */
     @Test
     void generateAccessToken_ShouldContainUsername() {
-        String token = jwtService.generateAccessToken("john");
+        String token = jwtService.generateAccessToken(1, "john");
         String username = jwtService.extractUsername(token);
         assertEquals("john", username);
+        assertEquals(1, JwtService.userId(jwtService.verify(token)));
+    }
+
+    /**
+     * Scenario: Two refresh tokens are issued for the same user, plus an access token.
+     * Expectation: Each refresh token has its own jti; the access token has none.
+     */
+    @Test
+    void generateRefreshToken_ShouldCarryUniqueId() {
+        Claims first = jwtService.verify(jwtService.generateRefreshToken(1, "john"));
+        Claims second = jwtService.verify(jwtService.generateRefreshToken(1, "john"));
+
+        assertNotNull(first.getId());
+        assertNotEquals(first.getId(), second.getId());
+        assertNull(jwtService.verify(jwtService.generateAccessToken(1, "john")).getId());
+    }
+
+    /**
+     * Scenario: An access token and a refresh token are issued.
+     * Expectation: Each is typed, so only the access token counts as one.
+     */
+    @Test
+    void tokenType_ShouldTellAccessFromRefresh() {
+        Claims access = jwtService.verify(jwtService.generateAccessToken(1, "john"));
+        Claims refresh = jwtService.verify(jwtService.generateRefreshToken(1, "john"));
+
+        assertTrue(JwtService.isAccessToken(access));
+        assertFalse(JwtService.isRefreshToken(access));
+        assertTrue(JwtService.isRefreshToken(refresh));
+        assertFalse(JwtService.isAccessToken(refresh));
     }
 
     /**
@@ -45,7 +80,7 @@ class JwtServiceTest {
      */
     @Test
     void validateToken_ShouldReturnTrue_ForValidToken() {
-        String token = jwtService.generateAccessToken("john");
+        String token = jwtService.generateAccessToken(1, "john");
         UserDetails user = new org.springframework.security.core.userdetails.User(
                 "john", "password", List.of());
 
@@ -60,7 +95,7 @@ class JwtServiceTest {
     void validateToken_ShouldReturnFalse_ForExpiredToken() throws InterruptedException {
         // Arrange → set expiration to 1 ms so token expires immediately
         ReflectionTestUtils.setField(jwtService, "accessTokenExpirationMillis", 1L);
-        String token = jwtService.generateAccessToken("john");
+        String token = jwtService.generateAccessToken(1, "john");
         UserDetails user = new org.springframework.security.core.userdetails.User(
                 "john", "password", List.of());
 
@@ -77,7 +112,7 @@ class JwtServiceTest {
      */
     @Test
     void validateToken_ShouldReturnFalse_ForWrongUsername() {
-        String token = jwtService.generateAccessToken("john");
+        String token = jwtService.generateAccessToken(1, "john");
         UserDetails user = new org.springframework.security.core.userdetails.User(
                 "alice", "password", List.of());
 
@@ -97,4 +132,37 @@ class JwtServiceTest {
         // validateToken handles the exception internally and returns false
         assertFalse(jwtService.validateToken(badToken, user));
     }
+
+    /**
+     * Scenario: The same access token is presented on several requests.
+     * Expectation: Only the first call parses it; later calls return the same verified claims from the cache.
+     */
+    @Test
+    void verify_ShouldReuseClaimsForRepeatedToken() {
+        String token = jwtService.generateAccessToken(1, "john");
+
+        Claims first = jwtService.verify(token);
+        Claims second = jwtService.verify(token);
+
+        assertEquals("john", first.getSubject());
+        assertSame(first, second);
+        assertEquals(1.0, meterRegistry.get("cache.gets").tag("cache", "jwt").tag("result", "hit").functionCounter().count());
+    }
+
+    /**
+     * Scenario: A verified token has one character of its signature changed.
+     * Expectation: The altered token is not a cache hit and fails verification.
+     */
+    @Test
+    void verify_ShouldRejectTamperedTokenEvenAfterOriginalWasCached() {
+        String token = jwtService.generateAccessToken(1, "john");
+        jwtService.verify(token);
+
+        // well inside the signature, so no base64 padding bits are involved
+        int at = token.length() - 10;
+        String tampered = token.substring(0, at) + (token.charAt(at) == 'A' ? 'B' : 'A') + token.substring(at + 1);
+
+        assertNull(jwtService.verify(tampered));
+        assertNull(jwtService.extractUsername(tampered));
+    }
 }
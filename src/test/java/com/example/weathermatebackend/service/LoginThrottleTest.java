@@ -0,0 +1,147 @@
+package com.example.weathermatebackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link LoginThrottle}.
+ * Focus: per-IP and per-username limits over a sliding window, the Retry-After estimate,
+ * and exact counting under concurrent attempts.
+ */
+class LoginThrottleTest {
+
+    private static final long WINDOW = 60_000;
+
+    // start of a window, so elapsed times in the tests are exact
+    private static final long T0 = 1_000 * WINDOW;
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+    private LoginThrottle throttle(int perIp, int perUsername) {
+        return new LoginThrottle(perIp, perUsername, WINDOW / 1000, 1000, meterRegistry);
+    }
+
+    /**
+     * Scenario: One username is tried more often than allowed from different IPs.
+     * Expectation: Attempts beyond the limit are refused with a wait; other usernames still pass.
+     */
+    @Test
+    void tryAcquire_ShouldLimitPerUsername() {
+        LoginThrottle throttle = throttle(100, 3);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, throttle.tryAcquire("10.0.0." + i, "john", T0 + i));
+        }
+
+        assertTrue(throttle.tryAcquire("10.0.0.9", "john", T0 + 10) > 0);
+        assertEquals(0, throttle.tryAcquire("10.0.0.9", "alice", T0 + 10));
+        assertEquals(1, meterRegistry.get("auth.login.throttled").tag("scope", "username").counter().count());
+    }
+
+    /**
+     * Scenario: One IP tries many different usernames.
+     * Expectation: The IP limit stops it even though no username is over its own limit.
+     */
+    @Test
+    void tryAcquire_ShouldLimitPerIp() {
+        LoginThrottle throttle = throttle(3, 5);
+
+        for (int i = 0; i < 3; i++) {
+            assertEquals(0, throttle.tryAcquire("10.0.0.1", "user" + i, T0));
+        }
+
+        assertTrue(throttle.tryAcquire("10.0.0.1", "user9", T0) > 0);
+        assertEquals(0, throttle.tryAcquire("10.0.0.2", "user9", T0));
+    }
+
+    /**
+     * Scenario: The limit is used up at the start of a window and the client waits as told.
+     * Expectation: The wait covers the rest of this window plus enough of the next for the
+     * earlier attempts to decay; one attempt is allowed right after it, and not before.
+     */
+    @Test
+    void tryAcquire_ShouldAllowAgainAfterRetryAfter() {
+        LoginThrottle throttle = throttle(100, 4);
+        for (int i = 0; i < 4; i++) {
+            throttle.tryAcquire("10.0.0.1", "john", T0);
+        }
+
+        // Act → 4 attempts in this window, limit 4: the next window must be 1/4 through
+        long retryAfter = throttle.tryAcquire("10.0.0.1", "john", T0);
+
+        // Assert
+        assertEquals(WINDOW + WINDOW / 4, retryAfter);
+        assertTrue(throttle.tryAcquire("10.0.0.1", "john", T0 + retryAfter - 1_000) > 0);
+        assertEquals(0, throttle.tryAcquire("10.0.0.1", "john", T0 + retryAfter));
+    }
+
+    /**
+     * Scenario: Attempts are refused while the limit is reached.
+     * Expectation: Refused attempts are not counted, so hammering does not push the wait further out.
+     */
+    @Test
+    void tryAcquire_ShouldNotCountRefusedAttempts() {
+        LoginThrottle throttle = throttle(100, 2);
+        throttle.tryAcquire("10.0.0.1", "john", T0);
+        throttle.tryAcquire("10.0.0.1", "john", T0);
+
+        long first = throttle.tryAcquire("10.0.0.1", "john", T0 + 1_000);
+        for (int i = 0; i < 50; i++) {
+            throttle.tryAcquire("10.0.0.1", "john", T0 + 1_000);
+        }
+
+        assertEquals(first, throttle.tryAcquire("10.0.0.1", "john", T0 + 1_000));
+    }
+
+    /**
+     * Scenario: The user gets the password right after a few misses.
+     * Expectation: The username counter starts over.
+     */
+    @Test
+    void onSuccess_ShouldResetUsernameCounter() {
+        LoginThrottle throttle = throttle(100, 2);
+        throttle.tryAcquire("10.0.0.1", "john", T0);
+        throttle.tryAcquire("10.0.0.1", "john", T0);
+
+        throttle.onSuccess("john");
+
+        assertEquals(0, throttle.tryAcquire("10.0.0.1", "john", T0));
+    }
+
+    /**
+     * Scenario: Many threads try the same username at once.
+     * Expectation: Exactly the limit gets through.
+     */
+    @Test
+    void tryAcquire_ShouldCountExactlyUnderContention() throws Exception {
+        LoginThrottle throttle = throttle(10_000, 100);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Long>> results = new ArrayList<>();
+        try (ExecutorService pool = Executors.newFixedThreadPool(8)) {
+            for (int i = 0; i < 400; i++) {
+                results.add(pool.submit(() -> {
+                    start.await();
+                    return throttle.tryAcquire("10.0.0.1", "john", T0);
+                }));
+            }
+            start.countDown();
+
+            int allowed = 0;
+            for (Future<Long> result : results) {
+                if (result.get() == 0) {
+                    allowed++;
+                }
+            }
+            assertEquals(100, allowed);
+        }
+    }
+}
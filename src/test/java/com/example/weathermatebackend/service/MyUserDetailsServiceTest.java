@@ -12,6 +12,9 @@ import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.core.userdetails.UserDetails;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.Set;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -81,4 +84,36 @@ class MyUserDetailsServiceTest {
         // Verify repository method was called
         verify(userRepository).findByUsername("alice");
     }
+
+    /**
+     * Scenario: The user is listed in app.admin.usernames.
+     * Expectation: The principal carries the ADMIN authority next to USER.
+     */
+    @Test
+    void loadUserByUsername_ShouldGrantAdmin_WhenUsernameIsConfigured() {
+        ReflectionTestUtils.setField(userDetailsService, "adminUsernames", Set.of("john"));
+        when(userRepository.findByUsername("john")).thenReturn(user);
+
+        UserDetails userDetails = userDetailsService.loadUserByUsername("john");
+
+        assertTrue(userDetails.getAuthorities().stream().anyMatch(a -> a.getAuthority().equals("ADMIN")));
+    }
+
+    /**
+     * Scenario: After a login the provider hands over a rehash of the user's password.
+     * Expectation: The new hash is saved on the user and the returned principal carries it.
+     */
+    @Test
+    void updatePassword_ShouldSaveNewHash() {
+        // Arrange → repository echoes the saved entity
+        when(userRepository.save(user)).thenReturn(user);
+
+        // Act
+        UserDetails updated = userDetailsService.updatePassword(new UserPrinciple(user), "$2a$12$rehashed");
+
+        // Assert
+        verify(userRepository).save(user);
+        assertEquals("$2a$12$rehashed", user.getPassword());
+        assertEquals("$2a$12$rehashed", updated.getPassword());
+    }
 }
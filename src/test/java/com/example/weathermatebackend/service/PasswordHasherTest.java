@@ -0,0 +1,109 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.exception.PasswordHashingBusyException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link PasswordHasher}.
+ * Focus: hashing off the calling thread, refusing work once the queue is full,
+ * and reporting hashes that need a higher strength.
+ */
+class PasswordHasherTest {
+
+    private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    private PasswordHasher hasher;
+
+    @AfterEach
+    void tearDown() {
+        hasher.shutdown();
+    }
+
+    /**
+     * Scenario: A password is encoded and then checked, right and wrong.
+     * Expectation: Both run on a hashing thread and are timed per operation.
+     */
+    @Test
+    void encodeAndMatches_ShouldRunOnHashingPool() {
+        // Arrange → delegate records which thread it runs on
+        String[] hashedOn = new String[1];
+        PasswordEncoder recording = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                hashedOn[0] = Thread.currentThread().getName();
+                return super.encode(rawPassword);
+            }
+        };
+        hasher = new PasswordHasher(recording, 1, 4, meterRegistry);
+
+        // Act
+        String hash = hasher.encode("secret");
+
+        // Assert
+        assertTrue(hasher.matches("secret", hash));
+        assertFalse(hasher.matches("wrong", hash));
+        assertTrue(hashedOn[0].startsWith("password-hash-"));
+        assertEquals(1, meterRegistry.get("auth.password.hash").tag("operation", "encode").timer().count());
+        assertEquals(2, meterRegistry.get("auth.password.hash").tag("operation", "matches").timer().count());
+        assertEquals(3, meterRegistry.get("auth.password.queue.wait").timer().count());
+    }
+
+    /**
+     * Scenario: The only hashing thread is busy and the one queue slot is taken.
+     * Expectation: A third hash is refused at once instead of waiting.
+     */
+    @Test
+    void encode_ShouldRejectWhenQueueIsFull() throws Exception {
+        // Arrange → a delegate that holds the hashing thread until released
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        PasswordEncoder blocking = new BCryptPasswordEncoder(4) {
+            @Override
+            public String encode(CharSequence rawPassword) {
+                started.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return super.encode(rawPassword);
+            }
+        };
+        hasher = new PasswordHasher(blocking, 1, 1, meterRegistry);
+        CompletableFuture<String> running = CompletableFuture.supplyAsync(() -> hasher.encode("one"));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        CompletableFuture<String> queued = CompletableFuture.supplyAsync(() -> hasher.encode("two"));
+        while (meterRegistry.get("auth.password.queue.size").gauge().value() < 1) {
+            Thread.onSpinWait();
+        }
+
+        // Act & Assert
+        assertThrows(PasswordHashingBusyException.class, () -> hasher.encode("three"));
+        assertEquals(1, meterRegistry.get("auth.password.rejected").counter().count());
+
+        release.countDown();
+        assertNotNull(running.get(5, TimeUnit.SECONDS));
+        assertNotNull(queued.get(5, TimeUnit.SECONDS));
+    }
+
+    /**
+     * Scenario: A hash stored at a lower strength than configured is checked.
+     * Expectation: It is reported for upgrade; a hash at the configured strength is not.
+     */
+    @Test
+    void upgradeEncoding_ShouldFlagWeakerHashes() {
+        hasher = new PasswordHasher(new BCryptPasswordEncoder(5), 1, 1, meterRegistry);
+
+        assertTrue(hasher.upgradeEncoding(new BCryptPasswordEncoder(4).encode("secret")));
+        assertFalse(hasher.upgradeEncoding(new BCryptPasswordEncoder(5).encode("secret")));
+    }
+}
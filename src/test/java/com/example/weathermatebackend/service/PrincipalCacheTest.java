@@ -0,0 +1,105 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.model.User;
+import com.example.weathermatebackend.model.UserPrinciple;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link PrincipalCache}.
+ * Focus: one user lookup per TTL, invalidation, and tokens that no longer match a user.
+ */
+@ExtendWith(MockitoExtension.class)
+class PrincipalCacheTest {
+
+    @Mock
+    private MyUserDetailsService userDetailsService;
+
+    private PrincipalCache principalCache;
+
+    @BeforeEach
+    void setUp() {
+        principalCache = new PrincipalCache(userDetailsService, 100, 300, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Scenario: Several requests arrive with tokens of the same user.
+     * Expectation: The user is loaded once, and the cached principal carries no password hash.
+     */
+    @Test
+    void resolve_ShouldLoadUserOnce() {
+        // Arrange
+        when(userDetailsService.loadUserById(1)).thenReturn(principal(1, "john"));
+
+        // Act
+        UserPrinciple first = principalCache.resolve(claims(1, "john"));
+        UserPrinciple second = principalCache.resolve(claims(1, "john"));
+
+        // Assert
+        assertSame(first, second);
+        assertEquals(1, first.getUserId());
+        assertNull(first.getPassword());
+        verify(userDetailsService, times(1)).loadUserById(1);
+    }
+
+    /**
+     * Scenario: A user changes after their principal was cached.
+     * Expectation: After invalidation the next request loads the user again.
+     */
+    @Test
+    void invalidate_ShouldForceReload() {
+        when(userDetailsService.loadUserById(1)).thenReturn(principal(1, "john"));
+        principalCache.resolve(claims(1, "john"));
+
+        principalCache.invalidate(1);
+        principalCache.resolve(claims(1, "john"));
+
+        verify(userDetailsService, times(2)).loadUserById(1);
+    }
+
+    /**
+     * Scenario: A token names a user that was deleted, or one that was renamed since.
+     * Expectation: Neither resolves to a principal.
+     */
+    @Test
+    void resolve_ShouldRejectDeletedOrRenamedUsers() {
+        when(userDetailsService.loadUserById(1)).thenThrow(new UsernameNotFoundException("user not found"));
+        when(userDetailsService.loadUserById(2)).thenReturn(principal(2, "alice"));
+
+        assertNull(principalCache.resolve(claims(1, "john")));
+        assertNull(principalCache.resolve(claims(2, "alicia")));
+    }
+
+    /**
+     * Scenario: A token issued before tokens carried the user ID.
+     * Expectation: The user is found by name once and then cached under their ID.
+     */
+    @Test
+    void resolve_ShouldFallBackToUsernameForTokensWithoutId() {
+        when(userDetailsService.loadUserByUsername("john")).thenReturn(principal(1, "john"));
+
+        UserPrinciple principal = principalCache.resolve(Jwts.claims().subject("john").build());
+        principalCache.resolve(claims(1, "john"));
+
+        assertEquals(1, principal.getUserId());
+        verify(userDetailsService, never()).loadUserById(anyInt());
+    }
+
+    private static Claims claims(int userId, String username) {
+        return Jwts.claims().subject(username).add(JwtService.USER_ID_CLAIM, userId).build();
+    }
+
+    private static UserPrinciple principal(int id, String username) {
+        return new UserPrinciple(new User(id, username, "$2a$12$hash"));
+    }
+}
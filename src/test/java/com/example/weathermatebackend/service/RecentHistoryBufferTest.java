@@ -0,0 +1,158 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.SearchHistoryDto;
+import com.example.weathermatebackend.model.SearchHistory;
+import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link RecentHistoryBuffer}.
+ * Focus: loading a ring once, keeping it in sync with writes (including dedup merges)
+ * and falling back when it cannot answer.
+ */
+@ExtendWith(MockitoExtension.class)
+class RecentHistoryBufferTest {
+
+    @Mock
+    private SearchHistoryRepository historyRepository;
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private final CityIndex cityIndex = new CityIndex(new ClassPathResource("cities.csv"));
+
+    private final LocalDateTime start = LocalDateTime.of(2025, 3, 1, 12, 0);
+
+    private RecentHistoryBuffer buffer(boolean dedup, int capacity) {
+        SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+        SearchHistoryDeduplicator deduplicator = new SearchHistoryDeduplicator(jdbcTemplate, dedup, 300, meterRegistry);
+        return new RecentHistoryBuffer(historyRepository, cityIndex, deduplicator, capacity, 1, 30, meterRegistry);
+    }
+
+    @BeforeEach
+    void setUp() {
+        lenient().when(historyRepository.findPage(anyInt(), anyInt())).thenReturn(List.of());
+    }
+
+    /**
+     * Scenario: A user without history reads, then searches twice, then reads again.
+     * Expectation: The database is read once; the second read returns the new searches newest first.
+     */
+    @Test
+    void firstPage_ShouldServeWritesWithoutQueryingAgain() {
+        // Arrange → first read loads an empty, complete ring
+        RecentHistoryBuffer buffer = buffer(false, 8);
+        assertEquals(List.of(), buffer.firstPage(1, 3));
+
+        // Act
+        buffer.onPersisted(List.of(
+                history(10L, 1, "Colombo", start, 30.0),
+                history(11L, 1, "Kandy", start.plusSeconds(1), 22.0)));
+        List<SearchHistoryDto> page = buffer.firstPage(1, 3);
+
+        // Assert
+        verify(historyRepository, times(1)).findPage(1, 8);
+        assertEquals(2, page.size());
+        assertEquals(11L, page.getFirst().getId());
+        assertEquals(start.plusSeconds(1), page.getFirst().getSearchedAt());
+        assertEquals(cityIndex.resolve("Colombo").name(), page.get(1).getCity());
+    }
+
+    /**
+     * Scenario: The ring is full and more searches arrive.
+     * Expectation: The oldest entries fall out, and a page larger than what is kept goes to the database.
+     */
+    @Test
+    void firstPage_ShouldDropOldestAndDeclineWhenIncomplete() {
+        RecentHistoryBuffer buffer = buffer(false, 3);
+        buffer.firstPage(1, 1);
+
+        for (int i = 0; i < 5; i++) {
+            buffer.onPersisted(List.of(history(100L + i, 1, "Galle", start.plusSeconds(i), 20.0 + i)));
+        }
+
+        List<SearchHistoryDto> page = buffer.firstPage(1, 3);
+        assertEquals(List.of(104L, 103L, 102L), page.stream().map(SearchHistoryDto::getId).toList());
+        assertNull(buffer.firstPage(1, 4));
+    }
+
+    /**
+     * Scenario: In dedup mode, the user refreshes the same city inside the window.
+     * Expectation: The existing entry takes the new time and temperature and counts both searches.
+     */
+    @Test
+    void onPersisted_ShouldMergeRepeatsInDedupMode() {
+        RecentHistoryBuffer buffer = buffer(true, 8);
+        buffer.firstPage(1, 1);
+
+        buffer.onPersisted(List.of(
+                history(10L, 1, "Colombo", start, 30.0),
+                history(11L, 1, "Kandy", start.plusSeconds(2), 22.0),
+                history(12L, 1, "Colombo", start.plusSeconds(5), 31.0)));
+
+        List<SearchHistoryDto> page = buffer.firstPage(1, 5);
+        assertEquals(2, page.size());
+        assertEquals(10L, page.getFirst().getId());
+        assertEquals(2, page.getFirst().getSearches());
+        assertEquals(31.0, page.getFirst().getTemperature());
+        assertEquals(start.plusSeconds(5), page.getFirst().getSearchedAt());
+    }
+
+    /**
+     * Scenario: A batch is saved for a user whose ring was loaded after the batch committed.
+     * Expectation: Rows already in the ring are not added twice.
+     */
+    @Test
+    void onPersisted_ShouldSkipRowsAlreadyLoaded() {
+        SearchHistoryDto stored = mock(SearchHistoryDto.class);
+        when(stored.getId()).thenReturn(10L);
+        when(stored.getCity()).thenReturn("Colombo");
+        when(stored.getSearchedAt()).thenReturn(start);
+        when(stored.getSearches()).thenReturn(1);
+        when(historyRepository.findPage(1, 8)).thenReturn(List.of(stored));
+        RecentHistoryBuffer buffer = buffer(false, 8);
+        buffer.firstPage(1, 1);
+
+        buffer.onPersisted(List.of(history(10L, 1, "Colombo", start, 30.0)));
+
+        assertEquals(1, buffer.firstPage(1, 5).size());
+    }
+
+    /**
+     * Scenario: A user who never read history searches.
+     * Expectation: No ring is created on the write path, so the database is never queried.
+     */
+    @Test
+    void onPersisted_ShouldIgnoreUsersWithoutRing() {
+        RecentHistoryBuffer buffer = buffer(false, 8);
+
+        buffer.onPersisted(List.of(history(10L, 2, "Colombo", start, 30.0)));
+
+        verifyNoInteractions(historyRepository);
+    }
+
+    private SearchHistory history(long id, int userId, String city, LocalDateTime at, double temperature) {
+        CityIndex.CityRef ref = cityIndex.resolve(city);
+        SearchHistory history = new SearchHistory();
+        history.setId(id);
+        history.setUserId(userId);
+        history.setCity(ref.name());
+        history.setCityId(ref.isKnown() ? ref.id() : null);
+        history.setSearchedAt(at);
+        history.setTemperature(temperature);
+        return history;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.weathermatebackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link RevokedTokenStore}.
+ * Focus: exact answers behind the Bloom filter, expiry, growth past the expected size
+ * and surviving a restart through the snapshot.
+ */
+class RevokedTokenStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private RevokedTokenStore store(int expectedEntries) {
+        return new RevokedTokenStore(expectedEntries, 0.01, true, tempDir.resolve("revoked.snapshot"),
+                new SimpleMeterRegistry());
+    }
+
+    private static long inOneHour() {
+        return System.currentTimeMillis() + 3_600_000;
+    }
+
+    /**
+     * Scenario: A token ID is revoked, then revoked again.
+     * Expectation: It reads as revoked, the second revoke reports it was already there,
+     * and a different ID stays valid.
+     */
+    @Test
+    void revoke_ShouldBeExactAndSingleUse() {
+        RevokedTokenStore store = store(100);
+        String jti = UUID.randomUUID().toString();
+
+        assertTrue(store.revoke(jti, inOneHour()));
+
+        assertTrue(store.isRevoked(jti));
+        assertFalse(store.revoke(jti, inOneHour()));
+        assertFalse(store.isRevoked(UUID.randomUUID().toString()));
+    }
+
+    /**
+     * Scenario: Many more IDs are revoked than the store was sized for.
+     * Expectation: The table grows and every one of them is still found.
+     */
+    @Test
+    void revoke_ShouldGrowPastExpectedEntries() {
+        RevokedTokenStore store = store(8);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String jti = UUID.randomUUID().toString();
+            ids.add(jti);
+            store.revoke(jti, inOneHour());
+        }
+
+        assertEquals(500, store.size());
+        assertTrue(ids.stream().allMatch(store::isRevoked));
+    }
+
+    /**
+     * Scenario: One revoked token has expired, another has not, and a purge runs.
+     * Expectation: Only the expired ID is dropped.
+     */
+    @Test
+    void purgeExpired_ShouldDropOnlyExpiredIds() {
+        RevokedTokenStore store = store(100);
+        String expired = UUID.randomUUID().toString();
+        String live = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        store.revoke(expired, now - 1);
+        store.revoke(live, now + 60_000);
+
+        store.purgeExpired(now);
+
+        assertEquals(1, store.size());
+        assertFalse(store.isRevoked(expired));
+        assertTrue(store.isRevoked(live));
+    }
+
+    /**
+     * Scenario: IDs that are not canonical UUIDs are checked or revoked.
+     * Expectation: They count as revoked and cannot be added.
+     */
+    @Test
+    void isRevoked_ShouldRejectIdsThatAreNotUuids() {
+        RevokedTokenStore store = store(100);
+
+        assertTrue(store.isRevoked("not-a-uuid"));
+        assertTrue(store.isRevoked(null));
+        assertFalse(store.revoke("zzzzzzzz-zzzz-zzzz-zzzz-zzzzzzzzzzzz", inOneHour()));
+    }
+
+    /**
+     * Scenario: A store is saved and a new one restores from the same file.
+     * Expectation: Unexpired IDs are revoked in the new store; expired ones are not brought back.
+     */
+    @Test
+    void saveAndRestore_ShouldSurviveRestart() throws IOException {
+        // Arrange → one live and one expired ID (save purges the expired one first)
+        RevokedTokenStore first = store(100);
+        String live = UUID.randomUUID().toString();
+        String expired = UUID.randomUUID().toString();
+        first.revoke(live, inOneHour());
+        first.revoke(expired, System.currentTimeMillis() - 1);
+        first.snapshotOnShutdown();
+
+        // Act
+        RevokedTokenStore second = store(100);
+        second.restore();
+
+        // Assert
+        assertTrue(second.isRevoked(live));
+        assertFalse(second.isRevoked(expired));
+        assertEquals(1, second.size());
+    }
+
+    /**
+     * Scenario: The snapshot file is not a snapshot.
+     * Expectation: Startup goes on with an empty store.
+     */
+    @Test
+    void restore_ShouldIgnoreCorruptSnapshot() throws IOException {
+        Files.writeString(tempDir.resolve("revoked.snapshot"), "garbage");
+        RevokedTokenStore store = store(100);
+
+        assertDoesNotThrow(store::restore);
+        assertEquals(0, store.size());
+    }
+
+    /**
+     * Scenario: A UUID string is split into its two halves.
+     * Expectation: The halves match what java.util.UUID parses.
+     */
+    @Test
+    void msbAndLsb_ShouldMatchUuidParsing() {
+        UUID uuid = UUID.randomUUID();
+
+        assertEquals(uuid.getMostSignificantBits(), RevokedTokenStore.msb(uuid.toString()));
+        assertEquals(uuid.getLeastSignificantBits(), RevokedTokenStore.lsb(uuid.toString()));
+    }
+}
@@ -0,0 +1,112 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.model.SearchHistory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link SearchHistoryDeduplicator}.
+ * Focus: folding repeat searches within the window and sending one upsert per remaining row.
+ */
+@ExtendWith(MockitoExtension.class)
+class SearchHistoryDeduplicatorTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private SearchHistoryDeduplicator deduplicator;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    private final LocalDateTime start = LocalDateTime.of(2025, 3, 1, 12, 0);
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        // five-minute window
+        deduplicator = new SearchHistoryDeduplicator(jdbcTemplate, true, 300, meterRegistry);
+    }
+
+    /**
+     * Scenario: A client refreshes Colombo every few seconds and looks up Kandy once.
+     * Expectation: The Colombo refreshes become one row with the latest temperature and a hit count.
+     */
+    @Test
+    void mergeWithinBatch_ShouldCollapseRepeatsOfSameUserAndCity() {
+        List<SearchHistory> batch = List.of(
+                history(1, "Colombo", 1, start, 30.0),
+                history(1, "Kandy", 2, start.plusSeconds(2), 22.0),
+                history(1, "Colombo", 1, start.plusSeconds(5), 30.5),
+                history(1, "Colombo", 1, start.plusSeconds(10), 31.0));
+
+        List<SearchHistory> merged = deduplicator.mergeWithinBatch(batch);
+
+        assertEquals(2, merged.size());
+        SearchHistory colombo = merged.getFirst();
+        assertEquals(3, colombo.getHitCount());
+        assertEquals(start.plusSeconds(10), colombo.getSearchedAt());
+        assertEquals(31.0, colombo.getTemperature());
+        // the rows handed to listeners stay untouched
+        assertEquals(1, batch.getFirst().getHitCount());
+    }
+
+    /**
+     * Scenario: The same city is searched again, but after the window, or by another user.
+     * Expectation: Those searches stay separate rows.
+     */
+    @Test
+    void mergeWithinBatch_ShouldKeepSearchesOutsideWindowOrByOtherUsers() {
+        List<SearchHistory> batch = List.of(
+                history(1, "Colombo", 1, start, 30.0),
+                history(2, "Colombo", 1, start.plusSeconds(1), 30.0),
+                history(1, "Colombo", 1, start.plusMinutes(6), 29.0));
+
+        assertEquals(3, deduplicator.mergeWithinBatch(batch).size());
+    }
+
+    /**
+     * Scenario: A batch with repeats is upserted.
+     * Expectation: One JDBC batch with one statement per merged row, and the collapsed count is recorded.
+     */
+    @Test
+    void upsert_ShouldSendOneStatementPerMergedRow() {
+        // Arrange → the sequence hands out one ID per incoming row
+        when(jdbcTemplate.queryForList(contains("nextval"), eq(Long.class), eq(2))).thenReturn(List.of(100L, 150L));
+        List<SearchHistory> batch = List.of(
+                history(1, "Colombo", 1, start, 30.0),
+                history(1, "Colombo", 1, start.plusSeconds(5), 30.5));
+
+        // Act
+        deduplicator.upsert(batch);
+
+        ArgumentCaptor<BatchPreparedStatementSetter> setter = ArgumentCaptor.forClass(BatchPreparedStatementSetter.class);
+        verify(jdbcTemplate).batchUpdate(contains("hit_count = hit_count + ?"), setter.capture());
+        assertEquals(1, setter.getValue().getBatchSize());
+        assertEquals(1.0, meterRegistry.counter("weather.history.dedup.collapsed").count());
+        assertEquals(100L, batch.getFirst().getId());
+    }
+
+    private static SearchHistory history(int userId, String city, Integer cityId, LocalDateTime at, double temperature) {
+        SearchHistory history = new SearchHistory();
+        history.setUserId(userId);
+        history.setCity(city);
+        history.setCityId(cityId);
+        history.setSearchedAt(at);
+        history.setTemperature(temperature);
+        return history;
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.weathermatebackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.transaction.support.TransactionOperations;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link SearchHistoryPartitions}.
+ * Focus: which monthly partitions are created ahead and which are rolled up and dropped,
+ * and that converting a plain table keeps every row.
+ */
+@ExtendWith(MockitoExtension.class)
+class SearchHistoryPartitionsTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    @Mock
+    private RecentHistoryBuffer recentHistory;
+
+    private SearchHistoryPartitions partitions;
+
+    @BeforeEach
+    void setUp() {
+        partitions = new SearchHistoryPartitions(jdbcTemplate, TransactionOperations.withoutTransaction(),
+                recentHistory, 3, 2, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Scenario: Maintenance runs in June with two months to be created ahead.
+     * Expectation: Partitions for June, July and August are created if missing.
+     */
+    @Test
+    void ensurePartitions_ShouldCreateCurrentAndUpcomingMonths() {
+        partitions.ensurePartitions(YearMonth.of(2025, 6));
+
+        verify(jdbcTemplate).execute(contains("search_history_p202506 partition of search_history for values from ('2025-06-01') to ('2025-07-01')"));
+        verify(jdbcTemplate).execute(contains("search_history_p202507"));
+        verify(jdbcTemplate).execute(contains("search_history_p202508"));
+        verify(jdbcTemplate, never()).execute(contains("search_history_p202509"));
+    }
+
+    /**
+     * Scenario: A plain search_history table is converted while some old rows have no timestamp.
+     * Expectation: Those rows get the placeholder timestamp before the copy, every row is
+     * copied, and only then is the old table dropped.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void convertToPartitioned_ShouldKeepRowsWithoutTimestamp() {
+        // Arrange → a regular table whose oldest search is in April
+        when(jdbcTemplate.query(contains("relkind"), any(ResultSetExtractor.class))).thenReturn("r");
+        when(jdbcTemplate.queryForObject(contains("min(searched_at)"), eq(LocalDate.class))).thenReturn(LocalDate.of(2025, 4, 2));
+        when(jdbcTemplate.update(contains("where searched_at is null"), any(Object[].class))).thenReturn(2);
+
+        // Act
+        partitions.convertToPartitioned(YearMonth.of(2025, 6));
+
+        // Assert
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).update("update search_history_unpartitioned set searched_at = ? where searched_at is null",
+                SearchHistoryPartitions.MISSING_TIMESTAMP);
+        order.verify(jdbcTemplate).update("insert into search_history select * from search_history_unpartitioned");
+        order.verify(jdbcTemplate).execute("drop table search_history_unpartitioned");
+        verify(jdbcTemplate).execute(contains("search_history_p202504 partition of search_history"));
+    }
+
+    /**
+     * Scenario: Raw retention is three months and partitions exist from January to June.
+     * Expectation: January and February are rolled up and dropped, later months are kept,
+     * the default partition is only trimmed with a DELETE, and buffered recent history is reset.
+     */
+    @Test
+    void rollUpExpired_ShouldRollUpAndDropOnlyExpiredPartitions() {
+        // Arrange
+        when(jdbcTemplate.update(anyString())).thenReturn(4);
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class))).thenReturn(List.of(
+                "search_history_p202501", "search_history_p202502", "search_history_p202503",
+                "search_history_p202506", "search_history_default"));
+
+        // Act → June minus three months: everything before March is expired
+        partitions.rollUpExpired(YearMonth.of(2025, 6));
+
+        // Assert
+        verify(jdbcTemplate).update(contains("from search_history_p202501"));
+        verify(jdbcTemplate, times(3)).update(contains("group by user_id, coalesce('id:' || city_id, lower(city))"));
+        verify(jdbcTemplate).update(contains("from search_history_p202502"));
+        verify(jdbcTemplate).execute("drop table search_history_p202501");
+        verify(jdbcTemplate).execute("drop table search_history_p202502");
+        verify(jdbcTemplate, never()).execute("drop table search_history_p202503");
+        verify(jdbcTemplate, never()).execute("drop table search_history_default");
+        verify(jdbcTemplate).update(contains("delete from search_history_default where searched_at < '2025-03-01'"));
+        verify(recentHistory).invalidateAll();
+    }
+
+    /**
+     * Scenario: Startup against daily rows written before they had a city key.
+     * Expectation: The old name-based unique key is dropped before the rows are re-keyed, so
+     * an ID'd and an unknown spelling of one name can both be kept.
+     */
+    @Test
+    void keyDailyRows_ShouldDropOldKeyThenReKey() {
+        partitions.keyDailyRows();
+
+        InOrder order = inOrder(jdbcTemplate);
+        order.verify(jdbcTemplate).execute(contains("drop constraint if exists uk_search_history_daily_user_city_day"));
+        order.verify(jdbcTemplate).update(contains("delete from search_history_daily where city_key is null"));
+    }
+
+    /**
+     * Scenario: Maintenance runs when no partition has expired and the default partition
+     * holds nothing old.
+     * Expectation: No daily rows are written, so buffered recent history is kept.
+     */
+    @Test
+    void rollUpExpired_ShouldKeepRecentHistoryWhenNothingRolledUp() {
+        when(jdbcTemplate.queryForList(anyString(), eq(String.class)))
+                .thenReturn(List.of("search_history_p202505", "search_history_p202506", "search_history_default"));
+
+        partitions.rollUpExpired(YearMonth.of(2025, 6));
+
+        verify(jdbcTemplate, never()).execute(startsWith("drop table"));
+        verify(recentHistory, never()).invalidateAll();
+    }
+
+    /**
+     * Scenario: Partition names from the catalog, including ones we did not create.
+     * Expectation: Only names following the monthly pattern map to a month.
+     */
+    @Test
+    void partitionMonth_ShouldParseOnlyMonthlyPartitions() {
+        assertEquals(YearMonth.of(2024, 12), SearchHistoryPartitions.partitionMonth("search_history_p202412"));
+        assertNull(SearchHistoryPartitions.partitionMonth("search_history_default"));
+        assertNull(SearchHistoryPartitions.partitionMonth("search_history_pold"));
+    }
+}
@@ -0,0 +1,183 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.model.SearchHistory;
+import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link SearchHistoryWriter}.
+ * Focus: batching by size, flushing on shutdown and backpressure when the queue is full.
+ */
+@ExtendWith(MockitoExtension.class)
+class SearchHistoryWriterTest {
+
+    @Mock
+    private SearchHistoryRepository historyRepository;
+
+    @Mock
+    private SearchHistoryDeduplicator deduplicator;
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    /**
+     * Scenario: More rows are queued than fit in one batch, then the writer is stopped.
+     * Expectation: Rows are saved in batches of at most batch-size and none are lost.
+     */
+    @Test
+    void stop_ShouldFlushQueuedRowsInBatches() {
+        // Arrange → writer not started, so everything stays queued until stop
+        SearchHistoryWriter writer = new SearchHistoryWriter(historyRepository, deduplicator, List.of(), 100, 4, 60_000, 0, meterRegistry);
+        for (int i = 0; i < 10; i++) {
+            writer.enqueue(history("City" + i));
+        }
+
+        // Act
+        writer.stop();
+
+        // Assert → 4 + 4 + 2
+        ArgumentCaptor<List<SearchHistory>> captor = batchCaptor();
+        verify(historyRepository, times(3)).saveAll(captor.capture());
+        List<Integer> sizes = captor.getAllValues().stream().map(List::size).toList();
+        assertEquals(List.of(4, 4, 2), sizes);
+        assertEquals(10.0, meterRegistry.counter("weather.history.written").count());
+    }
+
+    /**
+     * Scenario: The background writer is running and a full batch is queued.
+     * Expectation: The batch is saved without waiting for the flush interval.
+     */
+    @Test
+    void start_ShouldFlushFullBatchBeforeInterval() {
+        SearchHistoryWriter writer = new SearchHistoryWriter(historyRepository, deduplicator, List.of(), 100, 3, 10_000, 0, meterRegistry);
+        writer.start();
+        try {
+            writer.enqueueAll(List.of(history("A"), history("B"), history("C")));
+
+            // Assert → saved well before the ten-second interval
+            verify(historyRepository, timeout(5000)).saveAll(argThat(rows -> ((List<?>) rows).size() == 3));
+        } finally {
+            writer.stop();
+        }
+    }
+
+    /**
+     * Scenario: The running writer waits on an empty queue with a long flush interval, then is stopped.
+     * Expectation: stop wakes it at once instead of waiting out the interval, and a late row is still saved.
+     */
+    @Test
+    void stop_ShouldNotWaitForFlushInterval() {
+        SearchHistoryWriter writer = new SearchHistoryWriter(historyRepository, deduplicator, List.of(), 100, 10, 60_000, 0, meterRegistry);
+        writer.start();
+        writer.enqueue(history("Late"));
+
+        long start = System.nanoTime();
+        writer.stop();
+
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+        verify(historyRepository).saveAll(argThat(rows -> ((List<?>) rows).size() == 1));
+    }
+
+    /**
+     * Scenario: The queue is full and no writer is draining it.
+     * Expectation: The caller saves its own row after the enqueue timeout.
+     */
+    @Test
+    void enqueue_ShouldWriteOnCallerThreadWhenQueueIsFull() {
+        SearchHistoryWriter writer = new SearchHistoryWriter(historyRepository, deduplicator, List.of(), 1, 10, 60_000, 10, meterRegistry);
+        writer.enqueue(history("Queued"));
+
+        // Act → second row finds the queue full
+        SearchHistory overflow = history("Overflow");
+        writer.enqueue(overflow);
+
+        // Assert
+        verify(historyRepository).saveAll(List.of(overflow));
+        assertEquals(1.0, meterRegistry.counter("weather.history.backpressure").count());
+    }
+
+    /**
+     * Scenario: The database rejects a batch.
+     * Expectation: The failure is counted and does not propagate to the caller.
+     */
+    @Test
+    void stop_ShouldCountRowsOfFailedBatch() {
+        when(historyRepository.saveAll(any())).thenThrow(new IllegalStateException("db down"));
+        SearchHistoryWriter writer = new SearchHistoryWriter(historyRepository, deduplicator, List.of(), 100, 10, 60_000, 0, meterRegistry);
+        writer.enqueue(history("A"));
+        writer.enqueue(history("B"));
+
+        assertDoesNotThrow(() -> writer.stop());
+
+        assertEquals(2.0, meterRegistry.counter("weather.history.dropped").count());
+    }
+
+    /**
+     * Scenario: In dedup mode the queue overflows while the background writer is flushing,
+     * so request threads write their own rows at the same time.
+     * Expectation: Upserts never overlap.
+     */
+    @Test
+    void flush_ShouldNotRunUpsertsConcurrently() throws Exception {
+        // Arrange → a slow upsert that records how many run at once
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        when(deduplicator.isEnabled()).thenReturn(true);
+        doAnswer(inv -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            Thread.sleep(20);
+            active.decrementAndGet();
+            return null;
+        }).when(deduplicator).upsert(any());
+        SearchHistoryWriter writer = new SearchHistoryWriter(historyRepository, deduplicator, List.of(), 1, 1, 10, 0, meterRegistry);
+        writer.start();
+
+        // Act → four callers overflow the one-slot queue
+        try (ExecutorService callers = Executors.newFixedThreadPool(4)) {
+            for (int i = 0; i < 4; i++) {
+                int caller = i;
+                callers.submit(() -> {
+                    for (int j = 0; j < 5; j++) {
+                        writer.enqueue(history("City" + caller));
+                    }
+                });
+            }
+        }
+        writer.stop();
+
+        // Assert
+        assertEquals(1, maxActive.get());
+        assertEquals(20.0, meterRegistry.counter("weather.history.written").count());
+    }
+
+    private static SearchHistory history(String city) {
+        SearchHistory history = new SearchHistory();
+        history.setCity(city);
+        return history;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static ArgumentCaptor<List<SearchHistory>> batchCaptor() {
+        return ArgumentCaptor.forClass((Class<List<SearchHistory>>) (Class<?>) List.class);
+    }
+}
@@ -0,0 +1,130 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.TrendingCityDto;
+import com.example.weathermatebackend.exception.InvalidRequestException;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link TrendingCities}.
+ * Focus: ranking heavy hitters, the sliding windows, the bounded candidate set and
+ * lock-free recording.
+ */
+class TrendingCitiesTest {
+
+    private static final long HOUR = Duration.ofHours(1).toMillis();
+
+    private TrendingCities trending;
+
+    private final long start = 1_700_000_000_000L - Math.floorMod(1_700_000_000_000L, HOUR);
+
+    @BeforeEach
+    void setUp() {
+        // room for 5 candidates, top capped at 3
+        trending = new TrendingCities(512, 4, 5, 3);
+    }
+
+    /**
+     * Scenario: Colombo is searched 30 times, Kandy 10 times and Galle once.
+     * Expectation: They are ranked by search count with counts that do not undercount.
+     */
+    @Test
+    void getTrending_ShouldRankCitiesBySearches() {
+        record("Colombo", 30, start);
+        record("Kandy", 10, start);
+        record("Galle", 1, start);
+
+        List<TrendingCityDto> top = trending.getTrending(TrendingCities.Window.HOUR, 2, start);
+
+        assertEquals(List.of("Colombo", "Kandy"), top.stream().map(TrendingCityDto::getCity).toList());
+        assertTrue(top.getFirst().getSearches() >= 30);
+        assertTrue(top.get(1).getSearches() >= 10);
+    }
+
+    /**
+     * Scenario: Colombo was busy two hours ago, Kandy is busy now.
+     * Expectation: The hour window only shows Kandy while the day window still counts both.
+     */
+    @Test
+    void getTrending_ShouldForgetSearchesOutsideTheWindow() {
+        record("Colombo", 20, start);
+        record("Kandy", 5, start + 2 * HOUR);
+
+        List<TrendingCityDto> hour = trending.getTrending(TrendingCities.Window.HOUR, 3, start + 2 * HOUR);
+        List<TrendingCityDto> day = trending.getTrending(TrendingCities.Window.DAY, 3, start + 2 * HOUR);
+
+        assertEquals(List.of("Kandy"), hour.stream().map(TrendingCityDto::getCity).toList());
+        assertEquals(List.of("Colombo", "Kandy"), day.stream().map(TrendingCityDto::getCity).toList());
+        assertEquals(List.of(), trending.getTrending(TrendingCities.Window.DAY, 3, start + 27 * HOUR));
+    }
+
+    /**
+     * Scenario: Many one-off cities are searched, then one city repeatedly.
+     * Expectation: The repeated city displaces a one-off candidate and tops the ranking.
+     */
+    @Test
+    void record_ShouldReplaceWeakestCandidate() {
+        for (int i = 0; i < 20; i++) {
+            record("Nowhere " + i, 1, start);
+        }
+        record("Colombo", 8, start);
+
+        assertEquals("Colombo", trending.getTrending(TrendingCities.Window.HOUR, 1, start).getFirst().getCity());
+    }
+
+    /**
+     * Scenario: Many threads record the same cities at once.
+     * Expectation: No search is lost; with few cities in a wide sketch the counts are exact.
+     */
+    @Test
+    void record_ShouldCountEverySearchUnderContention() throws Exception {
+        CountDownLatch go = new CountDownLatch(1);
+        try (ExecutorService pool = Executors.newFixedThreadPool(8)) {
+            List<Future<?>> done = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                String city = t % 2 == 0 ? "Colombo" : "Kandy";
+                done.add(pool.submit(() -> {
+                    go.await();
+                    record(city, 1_000, start);
+                    return null;
+                }));
+            }
+            go.countDown();
+            for (Future<?> f : done) {
+                f.get();
+            }
+        }
+
+        List<TrendingCityDto> top = trending.getTrending(TrendingCities.Window.HOUR, 2, start);
+
+        assertEquals(4_000, top.getFirst().getSearches());
+        assertEquals(4_000, top.get(1).getSearches());
+    }
+
+    /**
+     * Scenario: A client asks for an unknown window or a non-positive top.
+     * Expectation: Both are rejected as bad requests.
+     */
+    @Test
+    void getTrending_ShouldRejectInvalidArguments() {
+        assertThrows(InvalidRequestException.class, () -> TrendingCities.Window.parse("week"));
+        assertThrows(InvalidRequestException.class, () -> trending.getTrending(TrendingCities.Window.HOUR, 0));
+    }
+
+    private void record(String city, int times, long at) {
+        CityIndex.CityRef ref = new CityIndex.CityRef(0, city, null, "q:" + city.toLowerCase());
+        for (int i = 0; i < times; i++) {
+            trending.record(ref, at);
+        }
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.weathermatebackend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import static com.example.weathermatebackend.service.UpstreamQuotaGovernor.Lane.BACKGROUND;
+import static com.example.weathermatebackend.service.UpstreamQuotaGovernor.Lane.INTERACTIVE;
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link UpstreamQuotaGovernor}.
+ * Focus: burst size and the priority of interactive over background traffic.
+ * The refill rate is one token per minute so no token is earned during a test.
+ */
+class UpstreamQuotaGovernorTest {
+
+    /**
+     * Scenario: Interactive callers use up the whole burst.
+     * Expectation: Exactly burst calls are admitted, the next one is rejected.
+     */
+    @Test
+    void tryAcquire_ShouldAdmitUpToBurst() {
+        UpstreamQuotaGovernor governor = new UpstreamQuotaGovernor(1, 4, 0.5, new SimpleMeterRegistry());
+
+        for (int i = 0; i < 4; i++) {
+            assertTrue(governor.tryAcquire(INTERACTIVE));
+        }
+
+        assertFalse(governor.tryAcquire(INTERACTIVE));
+        assertEquals(0, governor.remainingTokens());
+    }
+
+    /**
+     * Scenario: Background traffic competes with interactive traffic for the same bucket.
+     * Expectation: Background stops at the reserve, leaving those tokens to interactive callers.
+     */
+    @Test
+    void tryAcquire_ShouldKeepReserveForInteractiveLane() {
+        UpstreamQuotaGovernor governor = new UpstreamQuotaGovernor(1, 4, 0.5, new SimpleMeterRegistry());
+
+        assertTrue(governor.tryAcquire(BACKGROUND));
+        assertTrue(governor.tryAcquire(BACKGROUND));
+        assertFalse(governor.tryAcquire(BACKGROUND));
+
+        assertEquals(2, governor.remainingTokens());
+        assertTrue(governor.tryAcquire(INTERACTIVE));
+        assertTrue(governor.tryAcquire(INTERACTIVE));
+    }
+}
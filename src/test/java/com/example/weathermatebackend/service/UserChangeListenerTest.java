@@ -0,0 +1,85 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.model.User;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.beans.factory.support.StaticListableBeanFactory;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link UserChangeListener}.
+ * Focus: the principal is evicted only once the change has committed.
+ */
+@ExtendWith(MockitoExtension.class)
+class UserChangeListenerTest {
+
+    @Mock
+    private PrincipalCache principalCache;
+
+    private UserChangeListener listener;
+
+    @BeforeEach
+    void setUp() {
+        StaticListableBeanFactory beanFactory = new StaticListableBeanFactory();
+        beanFactory.addBean("principalCache", principalCache);
+        listener = new UserChangeListener(beanFactory.getBeanProvider(PrincipalCache.class));
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            TransactionSynchronizationManager.clearSynchronization();
+        }
+    }
+
+    /**
+     * Scenario: A user is updated inside a transaction that then commits.
+     * Expectation: Nothing is evicted at flush; the principal is evicted after commit.
+     */
+    @Test
+    void onChange_ShouldEvictAfterCommit() {
+        // Arrange
+        TransactionSynchronizationManager.initSynchronization();
+
+        // Act → the flush callback
+        listener.onChange(new User(7, "john", "hash"));
+
+        // Assert → still cached until the commit
+        verifyNoInteractions(principalCache);
+        TransactionSynchronizationManager.getSynchronizations().forEach(TransactionSynchronization::afterCommit);
+        verify(principalCache).invalidate(7);
+    }
+
+    /**
+     * Scenario: A user is updated inside a transaction that rolls back.
+     * Expectation: The cached principal is kept.
+     */
+    @Test
+    void onChange_ShouldNotEvictOnRollback() {
+        TransactionSynchronizationManager.initSynchronization();
+
+        listener.onChange(new User(7, "john", "hash"));
+        TransactionSynchronizationManager.getSynchronizations()
+                .forEach(s -> s.afterCompletion(TransactionSynchronization.STATUS_ROLLED_BACK));
+
+        verifyNoInteractions(principalCache);
+    }
+
+    /**
+     * Scenario: A user changes outside any Spring transaction.
+     * Expectation: The principal is evicted right away.
+     */
+    @Test
+    void onChange_ShouldEvictImmediatelyWithoutTransaction() {
+        listener.onChange(new User(7, "john", "hash"));
+
+        verify(principalCache).invalidate(7);
+    }
+}
@@ -4,22 +4,32 @@ import com.example.weathermatebackend.dto.AuthResponseDto;
 import com.example.weathermatebackend.dto.UserRegistrationDto;
 import com.example.weathermatebackend.exception.UsernameAlreadyExistsException;
 import com.example.weathermatebackend.model.User;
+import com.example.weathermatebackend.model.UserPrinciple;
 import com.example.weathermatebackend.repository.UserRepository;
 import jakarta.servlet.http.Cookie;
 import jakarta.servlet.http.HttpServletResponse;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.Jwts;
+import org.mockito.ArgumentCaptor;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
 import org.mockito.junit.jupiter.MockitoExtension;
 import org.springframework.security.authentication.AuthenticationManager;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
 import org.springframework.test.util.ReflectionTestUtils;
 
+import java.util.Date;
+
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.*;
 
 /**
@@ -42,13 +52,20 @@ class UserServiceTest {
     @Mock
     private HttpServletResponse response;
 
+    @Mock
+    private PrincipalCache principalCache;
+
+    @Mock
+    private RevokedTokenStore revokedTokens;
+
     @InjectMocks
     private UserService userService;
 
     @BeforeEach
     void setUp() {
         // Create a fresh service instance for each test
-        userService = new UserService(userRepository, authManager, jwtService);
+        userService = new UserService(userRepository, authManager, jwtService, new BCryptPasswordEncoder(4),
+                principalCache, revokedTokens);
 
         // Inject fake config values for @Value fields
         ReflectionTestUtils.setField(userService, "refreshTokenCookieName", "refreshToken");
@@ -110,12 +127,13 @@ class UserServiceTest {
         // Arrange → mock authentication success
         Authentication auth = mock(Authentication.class);
         when(auth.isAuthenticated()).thenReturn(true);
+        when(auth.getPrincipal()).thenReturn(new UserPrinciple(user));
         when(authManager.authenticate(any(UsernamePasswordAuthenticationToken.class)))
                 .thenReturn(auth);
 
         // Tokens returned from jwtService
-        when(jwtService.generateAccessToken("john")).thenReturn("access-token");
-        when(jwtService.generateRefreshToken("john")).thenReturn("refresh-token");
+        when(jwtService.generateAccessToken(1, "john")).thenReturn("access-token");
+        when(jwtService.generateRefreshToken(1, "john")).thenReturn("refresh-token");
 
         // Act
         AuthResponseDto responseDto = userService.verify(user, response);
@@ -147,4 +165,93 @@ class UserServiceTest {
         assertEquals("Authentication failed", responseDto.getMessage());
         assertNull(responseDto.getAccessToken()); // no token should be generated
     }
+
+    /**
+     * Scenario: A valid, unused refresh token is presented.
+     * Expectation: It is revoked, and a new access token and a new refresh cookie are issued.
+     */
+    @Test
+    void refresh_ShouldRotateRefreshToken() {
+        // Arrange → verified claims of an unused token for an existing user
+        Claims claims = refreshClaims("jti-1");
+        when(jwtService.verify("old-refresh")).thenReturn(claims);
+        when(revokedTokens.isRevoked("jti-1")).thenReturn(false);
+        when(principalCache.resolve(claims)).thenReturn(new UserPrinciple(new User(1, "john", null)));
+        when(revokedTokens.revoke(eq("jti-1"), anyLong())).thenReturn(true);
+        when(jwtService.generateAccessToken(1, "john")).thenReturn("access-token");
+        when(jwtService.generateRefreshToken(1, "john")).thenReturn("new-refresh");
+
+        // Act
+        AuthResponseDto refreshed = userService.refresh("old-refresh", response);
+
+        // Assert
+        assertEquals("access-token", refreshed.getAccessToken());
+        ArgumentCaptor<Cookie> cookie = ArgumentCaptor.forClass(Cookie.class);
+        verify(response).addCookie(cookie.capture());
+        assertEquals("new-refresh", cookie.getValue().getValue());
+    }
+
+    /**
+     * Scenario: A refresh token that was already used (or logged out) is presented again.
+     * Expectation: No tokens are issued and the user is not even looked up.
+     */
+    @Test
+    void refresh_ShouldRejectRevokedToken() {
+        Claims claims = refreshClaims("jti-1");
+        when(jwtService.verify("old-refresh")).thenReturn(claims);
+        when(revokedTokens.isRevoked("jti-1")).thenReturn(true);
+
+        assertNull(userService.refresh("old-refresh", response));
+        verifyNoInteractions(principalCache);
+        verify(response, never()).addCookie(any());
+    }
+
+    /**
+     * Scenario: Two requests race with the same refresh token and the other one revoked it first.
+     * Expectation: This request gets nothing.
+     */
+    @Test
+    void refresh_ShouldRejectWhenAnotherRequestRevokedFirst() {
+        Claims claims = refreshClaims("jti-1");
+        when(jwtService.verify("old-refresh")).thenReturn(claims);
+        when(principalCache.resolve(claims)).thenReturn(new UserPrinciple(new User(1, "john", null)));
+        when(revokedTokens.revoke(eq("jti-1"), anyLong())).thenReturn(false);
+
+        assertNull(userService.refresh("old-refresh", response));
+        verify(jwtService, never()).generateAccessToken(anyInt(), any());
+    }
+
+    /**
+     * Scenario: An access token is sent as the refresh cookie.
+     * Expectation: It is refused.
+     */
+    @Test
+    void refresh_ShouldRejectAccessToken() {
+        when(jwtService.verify("access-token")).thenReturn(claims(JwtService.ACCESS_TOKEN, null));
+
+        assertNull(userService.refresh("access-token", response));
+        verifyNoInteractions(revokedTokens, principalCache);
+    }
+
+    /**
+     * Scenario: A refresh token issued before rotation (no jti) is presented.
+     * Expectation: It is refused.
+     */
+    @Test
+    void refresh_ShouldRejectTokenWithoutId() {
+        when(jwtService.verify("old-refresh")).thenReturn(refreshClaims(null));
+
+        assertNull(userService.refresh("old-refresh", response));
+        verifyNoInteractions(revokedTokens, principalCache);
+    }
+
+    private static Claims refreshClaims(String jti) {
+        return claims(JwtService.REFRESH_TOKEN, jti);
+    }
+
+    private static Claims claims(String type, String jti) {
+        return Jwts.claims().id(jti).subject("john").add(JwtService.USER_ID_CLAIM, 1)
+                .add(JwtService.TOKEN_TYPE_CLAIM, type)
+                .expiration(new Date(System.currentTimeMillis() + 60_000)).build();
+    }
 }
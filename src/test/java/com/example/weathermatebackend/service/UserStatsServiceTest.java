@@ -0,0 +1,176 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.UserStatsDto;
+import com.example.weathermatebackend.exception.InvalidRequestException;
+import com.example.weathermatebackend.model.SearchHistory;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowCallbackHandler;
+
+import java.time.LocalDateTime;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link UserStatsService}.
+ * Focus: incremental aggregation, top-k ranking and persisting only what changed as deltas.
+ */
+@ExtendWith(MockitoExtension.class)
+class UserStatsServiceTest {
+
+    @Mock
+    private JdbcTemplate jdbcTemplate;
+
+    private UserStatsService statsService;
+
+    @BeforeEach
+    void setUp() {
+        statsService = new UserStatsService(jdbcTemplate, 100, 50);
+    }
+
+    /**
+     * Scenario: A user searches Colombo three times and Kandy once.
+     * Expectation: Colombo ranks first with count, average, min and max computed from the writes.
+     */
+    @Test
+    void getStats_ShouldRankCitiesBySearchCount() {
+        // Arrange → one saved batch, stats table empty for this user
+        statsService.onPersisted(List.of(
+                history("Colombo", 1, 30.0), history("Kandy", 2, 22.0),
+                history("Colombo", 1, 28.0), history("colombo", 1, 32.0)));
+
+        // Act
+        UserStatsDto stats = statsService.getStats(7, 10);
+
+        // Assert
+        assertEquals(4, stats.getTotalSearches());
+        assertEquals(2, stats.getDistinctCities());
+        assertEquals("colombo", stats.getTopCities().getFirst().getCity());
+        assertEquals(3, stats.getTopCities().getFirst().getSearches());
+        assertEquals(30.0, stats.getTopCities().getFirst().getAverageTemperature(), 1e-9);
+        assertEquals(28.0, stats.getTopCities().getFirst().getMinTemperature());
+        assertEquals(32.0, stats.getTopCities().getFirst().getMaxTemperature());
+        assertEquals("Kandy", stats.getTopCities().get(1).getCity());
+    }
+
+    /**
+     * Scenario: A client asks for only the single most searched city.
+     * Expectation: Exactly one city is returned.
+     */
+    @Test
+    void getStats_ShouldLimitToTopK() {
+        statsService.onPersisted(List.of(history("Colombo", 1, 30.0), history("Kandy", 2, 22.0)));
+
+        UserStatsDto stats = statsService.getStats(7, 1);
+
+        assertEquals(1, stats.getTopCities().size());
+        assertThrows(InvalidRequestException.class, () -> statsService.getStats(7, 0));
+    }
+
+    /**
+     * Scenario: Stats are flushed twice with one search in between.
+     * Expectation: Each flush upserts only the cities that changed since the last one, with
+     * what they gained since then rather than their totals.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_ShouldUpsertOnlyChangedCities() {
+        // Arrange
+        statsService.onPersisted(List.of(history("Colombo", 1, 30.0), history("Kandy", 2, 22.0)));
+        statsService.flush();
+
+        // Act → only Kandy changes before the second flush
+        statsService.onPersisted(List.of(history("Kandy", 2, 24.0)));
+        statsService.flush();
+
+        // Assert
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(contains("on conflict"), rows.capture());
+        assertEquals(2, rows.getAllValues().get(0).size());
+        assertEquals(1, rows.getAllValues().get(1).size());
+        assertEquals("id:2", rows.getAllValues().get(1).getFirst()[1]);
+        assertEquals(1L, rows.getAllValues().get(1).getFirst()[4]);
+        assertEquals(24.0, rows.getAllValues().get(1).getFirst()[7]);
+    }
+
+    /**
+     * Scenario: A flush fails, more searches arrive, and the next flush succeeds.
+     * Expectation: The second write carries the failed write's deltas plus the new ones.
+     */
+    @Test
+    @SuppressWarnings("unchecked")
+    void flush_ShouldRetryFailedDeltas() {
+        // Arrange → the first write fails
+        when(jdbcTemplate.batchUpdate(anyString(), anyList()))
+                .thenThrow(new QueryTimeoutException("timeout"))
+                .thenReturn(new int[]{1});
+        statsService.onPersisted(List.of(history("Kandy", 2, 20.0)));
+        statsService.flush();
+
+        // Act
+        statsService.onPersisted(List.of(history("Kandy", 2, 26.0)));
+        statsService.flush();
+
+        // Assert
+        ArgumentCaptor<List<Object[]>> rows = ArgumentCaptor.forClass(List.class);
+        verify(jdbcTemplate, times(2)).batchUpdate(anyString(), rows.capture());
+        Object[] retried = rows.getAllValues().get(1).getFirst();
+        assertEquals(2L, retried[4]);
+        assertEquals(20.0, retried[5]);
+        assertEquals(26.0, retried[6]);
+        assertEquals(46.0, retried[7]);
+    }
+
+    /**
+     * Scenario: The cache holds one user, a second user's search evicts the first, and the
+     * evicted user is read again before the eviction's write has run.
+     * Expectation: No write happens under the eviction; both users keep their searches, and
+     * the evicted aggregates are written once the removal listener runs.
+     */
+    @Test
+    void onPersisted_ShouldKeepEvictedStatsUntilWritten() {
+        // Arrange → cache maintenance and removal listeners wait until the test runs them
+        Deque<Runnable> tasks = new ArrayDeque<>();
+        statsService = new UserStatsService(jdbcTemplate, 1, 50, tasks::add);
+        statsService.onPersisted(List.of(history("Colombo", 1, 30.0)));
+        SearchHistory otherUser = history("Kandy", 2, 22.0);
+        otherUser.setUserId(8);
+        statsService.onPersisted(List.of(otherUser));
+
+        // Act → maintenance evicts one user; its write is queued, not run
+        tasks.poll().run();
+
+        // Assert
+        verify(jdbcTemplate, never()).batchUpdate(anyString(), anyList());
+        assertEquals(1, statsService.getStats(7, 10).getTotalSearches());
+        assertEquals(1, statsService.getStats(8, 10).getTotalSearches());
+        // only the two first-time loads read the table
+        verify(jdbcTemplate, times(2)).query(anyString(), any(RowCallbackHandler.class), any(Object[].class));
+
+        for (int i = 0; i < 100 && !tasks.isEmpty(); i++) {
+            tasks.poll().run();
+        }
+        verify(jdbcTemplate, atLeastOnce()).batchUpdate(contains("on conflict"), anyList());
+    }
+
+    private SearchHistory history(String city, Integer cityId, double temperature) {
+        SearchHistory history = new SearchHistory();
+        history.setCity(city);
+        history.setCityId(cityId);
+        history.setTemperature(temperature);
+        history.setSearchedAt(LocalDateTime.now());
+        history.setUserId(7);
+        return history;
+    }
+}
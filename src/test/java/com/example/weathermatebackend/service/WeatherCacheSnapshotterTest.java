@@ -0,0 +1,81 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.WeatherDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link WeatherCacheSnapshotter}.
+ * Focus: a snapshot written by one cache warms up a fresh one.
+ */
+class WeatherCacheSnapshotterTest {
+
+    @TempDir
+    Path tempDir;
+
+    /**
+     * Scenario: Save a cache with a live entry and an entry past the grace window, then restore.
+     * Expectation: The live entry comes back with its values and fetch time; the old one is dropped.
+     */
+    @Test
+    void saveAndLoad_ShouldRestoreLiveEntriesOnly() throws IOException {
+        Path file = tempDir.resolve("weather-cache.snapshot");
+
+        // Arrange → live entry plus one fetched long before ttl + grace (900 s)
+        WeatherCache source = new WeatherCache(100, 600, 300, new SimpleMeterRegistry());
+        source.put("id:1", weather(12.5, 4.2));
+        Instant fetchedAt = source.get("id:1").fetchedAt();
+        WeatherCache.Entry old = new WeatherCache.Entry(weather(1, 1), Instant.now().minusSeconds(899));
+        source.restore("id:2", old);
+
+        int written = new WeatherCacheSnapshotter(source, true, file).save();
+        assertEquals(2, written);
+
+        // Act → restore into an empty cache with a shorter retention, so id:2 has expired
+        WeatherCache target = new WeatherCache(100, 600, 60, new SimpleMeterRegistry());
+        int restored = new WeatherCacheSnapshotter(target, true, file).load();
+
+        // Assert
+        assertEquals(1, restored);
+        WeatherCache.Entry entry = target.get("id:1");
+        assertNotNull(entry);
+        assertEquals(fetchedAt.toEpochMilli(), entry.fetchedAt().toEpochMilli());
+        assertEquals(12.5, entry.weather().getMain().getTemp());
+        assertEquals(4.2, entry.weather().getWind().getSpeed());
+        assertNull(target.get("id:2"));
+    }
+
+    /**
+     * Scenario: The snapshot file is corrupt.
+     * Expectation: Startup restore ignores it and leaves the cache empty.
+     */
+    @Test
+    void restore_ShouldIgnoreCorruptSnapshot() throws IOException {
+        Path file = tempDir.resolve("weather-cache.snapshot");
+        Files.write(file, new byte[]{1, 2, 3});
+        WeatherCache cache = new WeatherCache(100, 600, 300, new SimpleMeterRegistry());
+
+        new WeatherCacheSnapshotter(cache, true, file).restore();
+
+        assertEquals(0, cache.size());
+    }
+
+    private static WeatherDto weather(double temp, double windSpeed) {
+        WeatherDto weather = new WeatherDto();
+        WeatherDto.Main main = new WeatherDto.Main();
+        main.setTemp(temp);
+        weather.setMain(main);
+        WeatherDto.Wind wind = new WeatherDto.Wind();
+        wind.setSpeed(windSpeed);
+        weather.setWind(wind);
+        return weather;
+    }
+}
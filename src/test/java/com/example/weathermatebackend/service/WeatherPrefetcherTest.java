@@ -0,0 +1,148 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.CityHourlyDemandDto;
+import com.example.weathermatebackend.exception.UpstreamUnavailableException;
+import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ClassPathResource;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.*;
+
+/**
+ * Unit tests for {@link WeatherPrefetcher}.
+ * Focus: hot-set ranking by time of day and the prefetch budget.
+ */
+@ExtendWith(MockitoExtension.class)
+class WeatherPrefetcherTest {
+
+    @Mock
+    private SearchHistoryRepository historyRepository;
+
+    @Mock
+    private WeatherService weatherService;
+
+    @Mock
+    private TrendingCities trendingCities;
+
+    private final CityIndex cityIndex = new CityIndex(new ClassPathResource("cities.csv"));
+
+    private WeatherPrefetcher prefetcher;
+
+    @BeforeEach
+    void setUp() {
+        // hot set of 3 plus 2 trending, at most 2 upstream calls per run and 3 per hour
+        prefetcher = new WeatherPrefetcher(historyRepository, weatherService, trendingCities, cityIndex, true,
+                3, 2, 14, 15, 60, 2, 3, new SimpleMeterRegistry());
+    }
+
+    /**
+     * Scenario: One city is busy at 7-8 am, another is busier overall but at night.
+     * Expectation: At 7 am the morning city ranks first.
+     */
+    @Test
+    void rankHotCities_ShouldFavourCitiesSearchedAtThisTimeOfDay() {
+        when(historyRepository.countSearchesByCityAndHour(any())).thenReturn(List.of(
+                demand(null, "Colombo", 7, 40),
+                demand(null, "Colombo", 8, 30),
+                demand(null, "London", 22, 200),
+                demand(null, "Paris", 3, 5)));
+
+        List<String> hot = prefetcher.rankHotCities(LocalDateTime.of(2026, 1, 5, 7, 0));
+
+        assertEquals(List.of("Colombo", "London", "Paris"), hot);
+    }
+
+    /**
+     * Scenario: A known city is searched under two spellings, neither of which would rank on
+     * its own, next to a city outside the bundled list.
+     * Expectation: The spellings add up under the city's ID and it is prefetched by its
+     * canonical query; the unknown city keeps its name.
+     */
+    @Test
+    void rankHotCities_ShouldScoreKnownCitiesById() {
+        when(historyRepository.countSearchesByCityAndHour(any())).thenReturn(List.of(
+                demand(150, "colombo", 7, 30),
+                demand(150, "Colombo,LK", 7, 30),
+                demand(null, "Atlantis", 7, 50)));
+
+        List<String> hot = prefetcher.rankHotCities(LocalDateTime.of(2026, 1, 5, 7, 0));
+
+        assertEquals(List.of("Colombo,LK", "Atlantis"), hot);
+    }
+
+    /**
+     * Scenario: The breaker is open, so every prefetch is rejected before a call goes out.
+     * Expectation: Rejections do not use up the budget; the next run still refreshes cities.
+     */
+    @Test
+    void prefetch_ShouldNotChargeBudgetForRejectedCalls() {
+        when(weatherService.prefetch(anyString(), any(Duration.class)))
+                .thenThrow(new UpstreamUnavailableException("open"));
+        List<String> cities = List.of("A", "B", "C", "D");
+        LocalDateTime now = LocalDateTime.of(2026, 1, 5, 7, 0);
+
+        prefetcher.prefetch(cities, now);
+        verify(weatherService, times(4)).prefetch(anyString(), any(Duration.class));
+
+        // breaker closed again: the whole hourly budget is still there
+        reset(weatherService);
+        when(weatherService.prefetch(anyString(), any(Duration.class))).thenReturn(true);
+        prefetcher.prefetch(cities, now.plusMinutes(1));
+        prefetcher.prefetch(cities, now.plusMinutes(2));
+        verify(weatherService, times(3)).prefetch(anyString(), any(Duration.class));
+    }
+
+    /**
+     * Scenario: More hot cities need refreshing than the per-run and per-hour budget allows.
+     * Expectation: Upstream refreshes stop at the budget, also across runs in the same hour.
+     */
+    @Test
+    void prefetch_ShouldStopAtRunAndHourlyBudget() {
+        when(weatherService.prefetch(anyString(), any(Duration.class))).thenReturn(true);
+        List<String> cities = List.of("A", "B", "C", "D");
+        LocalDateTime now = LocalDateTime.of(2026, 1, 5, 7, 0);
+
+        prefetcher.prefetch(cities, now);                 // 2 of 2 per run
+        prefetcher.prefetch(cities, now.plusMinutes(1));  // 1 left for the hour
+
+        verify(weatherService, times(3)).prefetch(anyString(), any(Duration.class));
+
+        // next hour the budget resets
+        prefetcher.prefetch(cities, now.plusHours(1));
+        verify(weatherService, times(5)).prefetch(anyString(), any(Duration.class));
+    }
+
+    /**
+     * Scenario: A city spikes right now and is also part of the ranked hot set under another spelling.
+     * Expectation: Trending cities come first and repeats are checked only once.
+     */
+    @Test
+    void withTrending_ShouldPutTrendingCitiesFirst() {
+        when(trendingCities.hotQueries(2)).thenReturn(List.of("Kandy,LK", "Colombo"));
+
+        List<String> cities = prefetcher.withTrending(List.of("Colombo", "London"));
+
+        assertEquals(List.of("Kandy,LK", "Colombo", "London"), cities);
+    }
+
+    private static CityHourlyDemandDto demand(Integer cityId, String city, int hour, long searches) {
+        return new CityHourlyDemandDto() {
+            public Integer getCityId() { return cityId; }
+            public String getCity() { return city; }
+            public int getSearchHour() { return hour; }
+            public long getSearches() { return searches; }
+        };
+    }
+}
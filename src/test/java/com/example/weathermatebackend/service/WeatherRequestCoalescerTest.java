@@ -0,0 +1,98 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.dto.WeatherDto;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link WeatherRequestCoalescer}.
+ * Focus: concurrent callers for the same key share one upstream call and its outcome.
+ */
+class WeatherRequestCoalescerTest {
+
+    private SimpleMeterRegistry meterRegistry;
+    private WeatherRequestCoalescer coalescer;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+        coalescer = new WeatherRequestCoalescer(meterRegistry);
+    }
+
+    /**
+     * Scenario: Several threads request the same city while the first call is still running.
+     * Expectation: The upstream supplier runs once, every caller gets the same DTO, and the
+ * flight is recorded as serving all four callers.
+     */
+    @Test
+    void execute_ShouldCollapseConcurrentCallsForSameKey() throws Exception {
+        // Arrange → a slow upstream call that blocks until released
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger upstreamCalls = new AtomicInteger();
+        WeatherDto weatherDto = new WeatherDto();
+
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        List<Future<WeatherDto>> results = new ArrayList<>();
+
+        // Act → leader starts first, followers join while it is blocked
+        results.add(executor.submit(() -> coalescer.execute("london", () -> {
+            upstreamCalls.incrementAndGet();
+            await(release);
+            return weatherDto;
+        })));
+        while (coalescer.inFlightCount() == 0) {
+            Thread.onSpinWait();
+        }
+        for (int i = 0; i < 3; i++) {
+            results.add(executor.submit(() -> coalescer.execute("london", () -> {
+                upstreamCalls.incrementAndGet();
+                return new WeatherDto();
+            })));
+        }
+        while (meterRegistry.counter("weather.upstream.coalesced").count() < 3) {
+            Thread.onSpinWait();
+        }
+        release.countDown();
+
+        // Assert → one upstream call, same result for everyone
+        for (Future<WeatherDto> result : results) {
+            assertSame(weatherDto, result.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, upstreamCalls.get());
+        assertEquals(0, coalescer.inFlightCount());
+        assertEquals(1, meterRegistry.summary("weather.upstream.flight.callers").count());
+        assertEquals(4, meterRegistry.summary("weather.upstream.flight.callers").totalAmount());
+        executor.shutdownNow();
+    }
+
+    /**
+     * Scenario: The upstream call fails.
+     * Expectation: The original exception reaches the caller and the flight is cleared.
+     */
+    @Test
+    void execute_ShouldPropagateFailureAndClearFlight() {
+        IllegalStateException failure = new IllegalStateException("upstream down");
+
+        IllegalStateException thrown = assertThrows(IllegalStateException.class,
+                () -> coalescer.execute("paris", () -> { throw failure; }));
+
+        assertSame(failure, thrown);
+        assertEquals(0, coalescer.inFlightCount());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,19 +1,34 @@
 package com.example.weathermatebackend.service;
 
 
+import com.example.weathermatebackend.dto.CityWeatherDto;
+import com.example.weathermatebackend.dto.HistoryPageDto;
 import com.example.weathermatebackend.dto.SearchHistoryDto;
 import com.example.weathermatebackend.dto.WeatherDto;
+import com.example.weathermatebackend.exception.InvalidRequestException;
+import com.example.weathermatebackend.exception.QuotaExhaustedException;
+import com.example.weathermatebackend.exception.UpstreamUnavailableException;
 import com.example.weathermatebackend.model.SearchHistory;
-import com.example.weathermatebackend.model.User;
 import com.example.weathermatebackend.repository.SearchHistoryRepository;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.extension.ExtendWith;
 import org.mockito.*;
 import org.mockito.junit.jupiter.MockitoExtension;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.http.HttpStatus;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestClient;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.*;
 import static org.mockito.Mockito.*;
@@ -29,17 +44,31 @@ class WeatherServiceTest {
     @Mock
     private SearchHistoryRepository historyRepository;
 
-    @InjectMocks
+    @Mock
+    private SearchHistoryWriter historyWriter;
+
+    @Mock
+    private RecentHistoryBuffer recentHistory;
+
+    @Mock
+    private RestClient restClient;
+
+    private SimpleMeterRegistry meterRegistry;
+
     private WeatherService weatherService;
 
-    private User user;
+    private final CityIndex cityIndex = new CityIndex(new ClassPathResource("cities.csv"));
+
+    private final int userId = 1;
 
     @BeforeEach
     void setUp() {
-        // Sample user for tests
-        user = new User();
-        user.setId(1);
-        user.setUsername("john");
+        meterRegistry = new SimpleMeterRegistry();
+        weatherService = service(new WeatherCache(100, 600, 300, meterRegistry),
+                new UpstreamQuotaGovernor(600, 100, 0.5, meterRegistry));
+
+        // by default the recent-history buffer declines and pages come from the repository
+        lenient().when(recentHistory.firstPage(anyInt(), anyInt())).thenReturn(null);
     }
 
     /**
@@ -62,42 +91,254 @@ class WeatherServiceTest {
         doReturn(weatherDto).when(spyService).callWeatherApi(anyString());
 
         // Act → call the method
-        WeatherDto result = spyService.fetchWeather("Colombo", user);
+        WeatherDto result = spyService.fetchWeather("Colombo", userId);
 
         // Assert → response returned correctly
         assertNotNull(result);
         assertEquals(25.0, result.getMain().getTemp());
 
-        // Verify that history save is triggered
-        verify(historyRepository, atLeastOnce()).save(any(SearchHistory.class));
+        // Verify that history is handed to the write-behind queue, not saved inline
+        verify(historyWriter, atLeastOnce()).enqueue(any(SearchHistory.class));
+        verify(historyRepository, never()).save(any());
+    }
+
+    /**
+     * Scenario: The same city is requested twice with different spelling.
+     * Expectation: Only the first request calls the API; the second is served from cache
+     * and still records history with the cached temperature.
+     */
+    @Test
+    void fetchWeather_ShouldServeRepeatLookupsFromCache() {
+        // Arrange → real DTO so the cached temperature can be checked
+        WeatherDto weatherDto = new WeatherDto();
+        WeatherDto.Main main = new WeatherDto.Main();
+        main.setTemp(18.5);
+        weatherDto.setMain(main);
+
+        WeatherService spyService = spy(weatherService);
+        doReturn(weatherDto).when(spyService).callWeatherApi(anyString());
+
+        // Act
+        spyService.fetchWeather("London", userId);
+        WeatherDto second = spyService.fetchWeather("  LONDON ", userId);
+
+        // Assert → one upstream call, two history rows
+        assertSame(weatherDto, second);
+        verify(spyService, times(1)).callWeatherApi(anyString());
+
+        ArgumentCaptor<SearchHistory> captor = ArgumentCaptor.forClass(SearchHistory.class);
+        verify(historyWriter, times(2)).enqueue(captor.capture());
+        assertEquals(18.5, captor.getAllValues().get(1).getTemperature());
+    }
+
+    /**
+     * Scenario: A cached entry is past its TTL but still inside the stale grace window.
+     * Expectation: The stale weather is returned immediately and a refresh is triggered.
+     */
+    @Test
+    void fetchWeatherResult_ShouldServeStaleEntryAndRefreshInBackground() {
+        // Arrange → TTL of 0 makes every entry stale right after it is cached
+        WeatherService staleService = spy(service(new WeatherCache(100, 0, 300, meterRegistry),
+                new UpstreamQuotaGovernor(600, 100, 0.5, meterRegistry)));
+
+        WeatherDto first = new WeatherDto();
+        first.setMain(new WeatherDto.Main());
+        WeatherDto refreshed = new WeatherDto();
+        refreshed.setMain(new WeatherDto.Main());
+        doReturn(first, refreshed).when(staleService).callWeatherApi(anyString());
+
+        // Act
+        staleService.fetchWeatherResult("Colombo", userId);
+        WeatherResult stale = staleService.fetchWeatherResult("Colombo", userId);
+        WeatherResult afterRefresh = staleService.fetchWeatherResult("Colombo", userId);
+
+        // Assert → caller got the stale copy, the refresh replaced it for the next caller
+        assertSame(first, stale.weather());
+        assertSame(refreshed, afterRefresh.weather());
+        assertTrue(stale.ageSeconds() >= 0);
+    }
+
+    /**
+     * Scenario: A batch request where one city is unknown upstream.
+     * Expectation: Other cities still return weather, the unknown one carries an error,
+     * and history for the successful lookups is queued in one call.
+     */
+    @Test
+    void fetchWeatherBatch_ShouldReturnPartialResultsAndSaveHistoryOnce() {
+        // Arrange
+        WeatherDto weatherDto = new WeatherDto();
+        weatherDto.setMain(new WeatherDto.Main());
+
+        WeatherService spyService = spy(weatherService);
+        doReturn(weatherDto).when(spyService).callWeatherApi("London,GB");
+        doReturn(weatherDto).when(spyService).callWeatherApi("Paris,FR");
+        doThrow(new HttpClientErrorException(HttpStatus.NOT_FOUND)).when(spyService).callWeatherApi("Atlantis");
+
+        // Act → "london" is a duplicate of "London" and must not be looked up twice
+        List<CityWeatherDto> results = spyService.fetchWeatherBatch(
+                List.of("London", "Paris", "Atlantis", "london"), userId);
+
+        // Assert
+        assertEquals(3, results.size());
+        assertNotNull(results.get(0).getWeather());
+        assertNotNull(results.get(1).getWeather());
+        assertEquals("City not found", results.get(2).getError());
+
+        verify(historyWriter).enqueueAll(argThat(histories -> histories.size() == 2));
+        verify(historyWriter, never()).enqueue(any());
+    }
+
+    /**
+     * Scenario: A user misses the cache while a prefetch of the same city is in flight, and
+     * the prefetch fails because the background lane is out of budget.
+     * Expectation: The user's lookup retries on the interactive lane and gets the weather.
+     */
+    @Test
+    void fetchWeather_ShouldRetryInteractiveWhenJoinedPrefetchRunsOutOfQuota() throws Exception {
+        // Arrange → background lane empty, interactive lane open; the prefetch waits until released
+        UpstreamQuotaGovernor governor = mock(UpstreamQuotaGovernor.class);
+        CountDownLatch prefetchStarted = new CountDownLatch(1);
+        CountDownLatch releasePrefetch = new CountDownLatch(1);
+        when(governor.tryAcquire(UpstreamQuotaGovernor.Lane.BACKGROUND)).thenAnswer(inv -> {
+            prefetchStarted.countDown();
+            releasePrefetch.await(5, TimeUnit.SECONDS);
+            return false;
+        });
+        when(governor.tryAcquire(UpstreamQuotaGovernor.Lane.INTERACTIVE)).thenReturn(true);
+        WeatherService service = spy(service(new WeatherCache(100, 600, 300, meterRegistry), governor));
+        WeatherDto weatherDto = new WeatherDto();
+        weatherDto.setMain(new WeatherDto.Main());
+        doReturn(weatherDto).when(service).callWeatherApi(anyString());
+
+        CompletableFuture<Boolean> prefetch = CompletableFuture.supplyAsync(() -> service.prefetch("Colombo", Duration.ZERO));
+        assertTrue(prefetchStarted.await(5, TimeUnit.SECONDS));
+
+        // Act → the user joins the prefetch's flight, which then fails
+        CompletableFuture<WeatherDto> lookup = CompletableFuture.supplyAsync(() -> service.fetchWeather("Colombo", userId));
+        while (meterRegistry.counter("weather.upstream.coalesced").count() < 1) {
+            Thread.onSpinWait();
+        }
+        releasePrefetch.countDown();
+
+        // Assert
+        assertSame(weatherDto, lookup.get(5, TimeUnit.SECONDS));
+        ExecutionException prefetchFailure = assertThrows(ExecutionException.class, () -> prefetch.get(5, TimeUnit.SECONDS));
+        assertInstanceOf(QuotaExhaustedException.class, prefetchFailure.getCause());
+        verify(governor).tryAcquire(UpstreamQuotaGovernor.Lane.INTERACTIVE);
+    }
+
+    /**
+     * Scenario: The breaker is open and more users miss the cache than the quota's burst.
+     * Expectation: Every miss is refused as unavailable, never as out of quota, because
+     * rejected calls give their token back.
+     */
+    @Test
+    void fetchWeather_ShouldRefundQuotaWhenGuardRejects() {
+        // Arrange → burst of 10, guard turning every call away
+        UpstreamQuotaGovernor governor = new UpstreamQuotaGovernor(60, 10, 0.5, meterRegistry);
+        WeatherUpstreamGuard guard = mock(WeatherUpstreamGuard.class);
+        when(guard.call(any())).thenThrow(new UpstreamUnavailableException("Weather provider is unavailable, please retry later"));
+        WeatherService service = service(new WeatherCache(100, 600, 300, meterRegistry), governor, guard);
+
+        // Act & Assert
+        for (int i = 0; i < 30; i++) {
+            String city = "City " + i;
+            assertThrowsExactly(UpstreamUnavailableException.class, () -> service.fetchWeather(city, userId));
+        }
+        assertEquals(10, governor.remainingTokens());
+    }
+
+    /**
+     * Scenario: Get the first history page for a user with more rows than the page holds.
+     * Expectation: size rows are returned newest first, with a cursor pointing at the last one.
+     */
+    @Test
+    void getHistory_ShouldReturnFirstPageWithCursor() {
+        // Arrange → repository returns size + 1 rows, meaning there is a next page
+        LocalDateTime now = LocalDateTime.of(2025, 3, 1, 12, 0);
+        SearchHistoryDto newest = historyRow(3L, "Colombo", now);
+        SearchHistoryDto middle = historyRow(2L, "Kandy", now.minusMinutes(5));
+        SearchHistoryDto oldest = historyRow(1L, "Galle", now.minusMinutes(10));
+        when(historyRepository.findPage(1, 3))
+                .thenReturn(List.of(newest, middle, oldest));
+
+        // Act
+        HistoryPageDto page = weatherService.getHistory(userId, null, 2);
+
+        // Assert → extra row trimmed, cursor encodes the last returned row
+        assertEquals(List.of(newest, middle), page.getItems());
+        assertEquals(new HistoryCursor(now.minusMinutes(5), 2L), HistoryCursor.decode(page.getNextCursor()));
+    }
+
+    /**
+     * Scenario: The user's recent searches are already buffered in memory.
+     * Expectation: The first page comes from the buffer and the database is not queried.
+     */
+    @Test
+    void getHistory_ShouldServeFirstPageFromRecentHistory() {
+        LocalDateTime now = LocalDateTime.of(2025, 3, 1, 12, 0);
+        SearchHistoryDto newest = historyRow(3L, "Colombo", now);
+        SearchHistoryDto oldest = historyRow(2L, "Kandy", now.minusMinutes(5));
+        when(recentHistory.firstPage(1, 2)).thenReturn(List.of(newest, oldest));
+
+        HistoryPageDto page = weatherService.getHistory(userId, null, 1);
+
+        assertEquals(List.of(newest), page.getItems());
+        assertNotNull(page.getNextCursor());
+        verifyNoInteractions(historyRepository);
+    }
+
+    /**
+     * Scenario: Get the next page using the cursor from the previous one.
+     * Expectation: The keyset query starts after the cursor and the last page has no cursor.
+     */
+    @Test
+    void getHistory_ShouldContinueAfterCursorAndEndWithoutCursor() {
+        LocalDateTime cursorTime = LocalDateTime.of(2025, 3, 1, 11, 55);
+        SearchHistoryDto oldest = historyRow(1L, "Galle", cursorTime.minusMinutes(5));
+        when(historyRepository.findPageAfter(1, cursorTime, 2L, 3))
+                .thenReturn(List.of(oldest));
+
+        HistoryPageDto page = weatherService.getHistory(userId, new HistoryCursor(cursorTime, 2L).encode(), 2);
+
+        assertEquals(List.of(oldest), page.getItems());
+        assertNull(page.getNextCursor());
     }
 
     /**
-     * Scenario: Get search history for a user.
-     * Expectation: Repository method is called and history list returned.
+     * Scenario: A client asks for a huge page or sends a tampered cursor.
+     * Expectation: The page size is capped and the bad cursor is rejected as a bad request.
      */
     @Test
-    void getHistory_ShouldReturnHistoryForUser() {
-        // Arrange → mock projection interface
-        SearchHistoryDto historyDto = mock(SearchHistoryDto.class);
-        lenient().when(historyDto.getCity()).thenReturn("Colombo");
-        lenient().when(historyDto.getTemperature()).thenReturn(25.0);
-        lenient().when(historyDto.getSearchedAt()).thenReturn(LocalDateTime.now());
-        lenient().when(historyDto.getId()).thenReturn(1L);
-
-        when(historyRepository.findByUserOrderBySearchedAtDesc(user))
-                .thenReturn(List.of(historyDto));
-
-        // Act → call service
-        List<SearchHistoryDto> history = weatherService.getHistory(user);
-
-        // Assert → repository returns the expected list
-        assertNotNull(history);
-        assertEquals(1, history.size());
-        assertEquals("Colombo", history.getFirst().getCity());
-        assertEquals(25.0, history.getFirst().getTemperature());
-
-        // Verify repository call
-        verify(historyRepository).findByUserOrderBySearchedAtDesc(user);
+    void getHistory_ShouldCapPageSizeAndRejectInvalidCursor() {
+        weatherService.getHistory(userId, null, 10_000);
+        verify(historyRepository).findPage(1, 101);
+
+        assertThrows(InvalidRequestException.class, () -> weatherService.getHistory(userId, "not-a-cursor", 20));
+        assertThrows(InvalidRequestException.class, () -> weatherService.getHistory(userId, null, 0));
+    }
+
+    // refreshes run inline; the rest of the wiring is the same for every test
+    private WeatherService service(WeatherCache weatherCache, UpstreamQuotaGovernor quotaGovernor) {
+        return service(weatherCache, quotaGovernor, new WeatherUpstreamGuard(5, 30, 1, 10, 100, meterRegistry));
+    }
+
+    private WeatherService service(WeatherCache weatherCache, UpstreamQuotaGovernor quotaGovernor,
+                                   WeatherUpstreamGuard upstreamGuard) {
+        WeatherService service = new WeatherService(restClient, historyRepository, historyWriter, recentHistory,
+                new TrendingCities(256, 4, 20, 10), weatherCache, cityIndex, new WeatherRequestCoalescer(meterRegistry),
+                upstreamGuard, quotaGovernor, Runnable::run);
+        ReflectionTestUtils.setField(service, "batchMaxCities", 30);
+        ReflectionTestUtils.setField(service, "batchParallelism", 4);
+        ReflectionTestUtils.setField(service, "historyMaxPageSize", 100);
+        return service;
+    }
+
+    private static SearchHistoryDto historyRow(long id, String city, LocalDateTime searchedAt) {
+        SearchHistoryDto row = mock(SearchHistoryDto.class);
+        lenient().when(row.getId()).thenReturn(id);
+        lenient().when(row.getCity()).thenReturn(city);
+        lenient().when(row.getSearchedAt()).thenReturn(searchedAt);
+        return row;
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,104 @@
+package com.example.weathermatebackend.service;
+
+import com.example.weathermatebackend.exception.UpstreamUnavailableException;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Unit tests for {@link WeatherUpstreamGuard}.
+ * Focus: breaker state transitions and fast rejection while open.
+ */
+class WeatherUpstreamGuardTest {
+
+    private SimpleMeterRegistry meterRegistry;
+
+    @BeforeEach
+    void setUp() {
+        meterRegistry = new SimpleMeterRegistry();
+    }
+
+    /**
+     * Scenario: The provider fails as many times in a row as the threshold allows.
+     * Expectation: The breaker opens and the next call is rejected without reaching upstream.
+     */
+    @Test
+    void call_ShouldOpenAfterConsecutiveFailuresAndRejectFast() {
+        WeatherUpstreamGuard guard = new WeatherUpstreamGuard(3, 60, 1, 10, 100, meterRegistry);
+        AtomicInteger upstreamCalls = new AtomicInteger();
+
+        // Arrange → three timeouts in a row
+        for (int i = 0; i < 3; i++) {
+            assertThrows(ResourceAccessException.class, () -> guard.call(() -> {
+                upstreamCalls.incrementAndGet();
+                throw new ResourceAccessException("timeout");
+            }));
+        }
+
+        // Act & Assert → breaker open, upstream not called again
+        assertEquals(WeatherUpstreamGuard.State.OPEN, guard.getState());
+        assertThrows(UpstreamUnavailableException.class, () -> guard.call(() -> {
+            upstreamCalls.incrementAndGet();
+            return "unreachable";
+        }));
+        assertEquals(3, upstreamCalls.get());
+        assertEquals(1.0, meterRegistry.counter("weather.upstream.breaker.transitions",
+                "from", "CLOSED", "to", "OPEN").count());
+    }
+
+    /**
+     * Scenario: The open period has elapsed and the probe call succeeds.
+     * Expectation: The breaker goes half-open, then closes again.
+     */
+    @Test
+    void call_ShouldCloseAfterSuccessfulHalfOpenProbe() {
+        // open duration of 0 → the very next call is a probe
+        WeatherUpstreamGuard guard = new WeatherUpstreamGuard(1, 0, 1, 10, 100, meterRegistry);
+        assertThrows(ResourceAccessException.class,
+                () -> guard.call(() -> { throw new ResourceAccessException("timeout"); }));
+
+        String result = guard.call(() -> "ok");
+
+        assertEquals("ok", result);
+        assertEquals(WeatherUpstreamGuard.State.CLOSED, guard.getState());
+        assertEquals(1.0, meterRegistry.counter("weather.upstream.breaker.transitions",
+                "from", "HALF_OPEN", "to", "CLOSED").count());
+    }
+
+    /**
+     * Scenario: Upstream answers 404 for an unknown city.
+     * Expectation: Client errors do not count as provider failures.
+     */
+    @Test
+    void call_ShouldIgnoreClientErrors() {
+        WeatherUpstreamGuard guard = new WeatherUpstreamGuard(1, 60, 1, 10, 100, meterRegistry);
+
+        assertThrows(HttpClientErrorException.class, () -> guard.call(() -> {
+            throw new HttpClientErrorException(HttpStatus.NOT_FOUND);
+        }));
+
+        assertEquals(WeatherUpstreamGuard.State.CLOSED, guard.getState());
+    }
+
+    /**
+     * Scenario: All bulkhead permits are taken by in-flight calls.
+     * Expectation: A further call is rejected with 503 instead of queuing.
+     */
+    @Test
+    void call_ShouldRejectWhenBulkheadIsFull() {
+        WeatherUpstreamGuard guard = new WeatherUpstreamGuard(3, 60, 1, 1, 0, meterRegistry);
+
+        // nested call runs while the outer one still holds the only permit
+        assertThrows(UpstreamUnavailableException.class,
+                () -> guard.call(() -> guard.call(() -> "inner")));
+
+        assertEquals(1.0, meterRegistry.counter("weather.upstream.rejected", "reason", "bulkhead_full").count());
+    }
+}